@@ -0,0 +1,29 @@
+package ubc.cosc322.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ubc.cosc322.AmazonsAction;
+import ubc.cosc322.BitBoard;
+
+// applying one legal move, as a copy of the position the way node expansion does
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ApplyActionBenchmark {
+
+    @Benchmark
+    public BitBoard applyAction(Corpus corpus) {
+        int i = corpus.next();
+        return AmazonsAction.applyAction(corpus.actions[i], corpus.boards[i]);
+    }
+}
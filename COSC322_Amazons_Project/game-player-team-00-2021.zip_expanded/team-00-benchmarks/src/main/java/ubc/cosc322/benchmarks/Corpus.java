@@ -0,0 +1,85 @@
+package ubc.cosc322.benchmarks;
+
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import ubc.cosc322.AmazonsAction;
+import ubc.cosc322.AmazonsActionFactory;
+import ubc.cosc322.BitBoard;
+
+// Fixed set of positions for the benchmarks, played out from the opening position with random legal
+// moves from a fixed seed, so every run and every machine sees the same boards. The phase picks how far
+// the games are played: a handful of moves, around a quarter of the board filled, or deep into the game.
+@State(Scope.Thread)
+public class Corpus {
+    public static final int POSITIONS = 64;
+
+    @Param({"opening", "middlegame", "endgame"})
+    public String phase;
+
+    public BitBoard[] boards;
+    public int[] colors;            // the player to move in each position
+    public int[] moves;             // a legal packed move in each position
+    public AmazonsAction[] actions; // the same moves as action objects
+    private int next;
+
+    @Setup
+    public void generate() {
+        int minPlies, maxPlies;
+        switch (phase) {
+            case "opening":
+                minPlies = 0;
+                maxPlies = 8;
+                break;
+            case "middlegame":
+                minPlies = 20;
+                maxPlies = 30;
+                break;
+            default:
+                minPlies = 45;
+                maxPlies = 60;
+                break;
+        }
+        Random random = new Random(322 + phase.hashCode());
+        int[] buffer = new int[AmazonsActionFactory.MAX_MOVES];
+        boards = new BitBoard[POSITIONS];
+        colors = new int[POSITIONS];
+        moves = new int[POSITIONS];
+        actions = new AmazonsAction[POSITIONS];
+        int i = 0;
+        while (i < POSITIONS) {
+            int plies = minPlies + random.nextInt(maxPlies - minPlies + 1);
+            BitBoard board = BitBoard.startPosition();
+            int color = BitBoard.BLACK_QUEEN;  // black moves first
+            boolean stuck = false;
+            for (int ply = 0; ply <= plies && !stuck; ply++) {
+                int count = AmazonsActionFactory.generateMoves(board, color, buffer);
+                if (count == 0) {
+                    stuck = true;
+                } else if (ply == plies) {
+                    boards[i] = board;
+                    colors[i] = color;
+                    moves[i] = buffer[random.nextInt(count)];
+                    actions[i] = AmazonsAction.fromPacked(moves[i]);
+                } else {
+                    AmazonsAction.applyMove(buffer[random.nextInt(count)], board);
+                    color = (color == BitBoard.WHITE_QUEEN) ? BitBoard.BLACK_QUEEN : BitBoard.WHITE_QUEEN;
+                }
+            }
+            if (!stuck) {
+                i++;  // otherwise the game ended early, draw another one
+            }
+        }
+    }
+
+    // index of the next position, cycling through the corpus
+    public int next() {
+        int index = next;
+        next = (next + 1) % POSITIONS;
+        return index;
+    }
+}
@@ -0,0 +1,35 @@
+package ubc.cosc322.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ubc.cosc322.BitboardEvaluator;
+import ubc.cosc322.HeuristicEvaluator;
+
+// leaf evaluations per second with the scalar and the bit-parallel evaluator
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EvaluationBenchmark {
+
+    @Benchmark
+    public double heuristicEval(Corpus corpus) {
+        int i = corpus.next();
+        return HeuristicEvaluator.getHeuristicEval(corpus.boards[i], corpus.colors[i]);
+    }
+
+    @Benchmark
+    public double bitboardEval(Corpus corpus) {
+        int i = corpus.next();
+        return BitboardEvaluator.getHeuristicEval(corpus.boards[i], corpus.colors[i]);
+    }
+}
@@ -0,0 +1,37 @@
+package ubc.cosc322.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ubc.cosc322.AmazonsAction;
+import ubc.cosc322.MonteCarlo;
+import ubc.cosc322.TreeNode;
+
+// Full search iterations per second (selection, expansion, evaluation and backpropagation) on one
+// thread: every invocation searches a fresh split-ply tree of one corpus position for a fixed budget.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class MctsBenchmark {
+    private static final int ITERATIONS = 500;
+
+    @Benchmark
+    @OperationsPerInvocation(ITERATIONS)
+    public AmazonsAction mctsIterations(Corpus corpus) {
+        int i = corpus.next();
+        MonteCarlo monteCarlo = new MonteCarlo(new TreeNode(corpus.boards[i], corpus.colors[i], true), Long.MAX_VALUE / 2, 1.4);
+        monteCarlo.setSeed(i);
+        monteCarlo.setMaxIterations(ITERATIONS);
+        return monteCarlo.MCTS();
+    }
+}
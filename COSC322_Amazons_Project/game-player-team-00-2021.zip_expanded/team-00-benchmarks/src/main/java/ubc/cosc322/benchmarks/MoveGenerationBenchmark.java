@@ -0,0 +1,40 @@
+package ubc.cosc322.benchmarks;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ubc.cosc322.AmazonsAction;
+import ubc.cosc322.AmazonsActionFactory;
+
+// full move lists per second: the object-building getActions and the packed-int generator the search uses
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MoveGenerationBenchmark {
+    private final int[] buffer = new int[AmazonsActionFactory.MAX_MOVES];
+
+    @Benchmark
+    public ArrayList<AmazonsAction> getActions(Corpus corpus) {
+        int i = corpus.next();
+        return AmazonsActionFactory.getActions(corpus.boards[i], corpus.colors[i]);
+    }
+
+    @Benchmark
+    public int generateMoves(Corpus corpus) {
+        int i = corpus.next();
+        return AmazonsActionFactory.generateMoves(corpus.boards[i], corpus.colors[i], buffer);
+    }
+}
@@ -0,0 +1,58 @@
+package ubc.cosc322.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ubc.cosc322.AmazonsAction;
+import ubc.cosc322.MonteCarlo;
+import ubc.cosc322.TreeNode;
+
+// How the parallel search modes scale: every invocation searches a fresh split-ply tree of one corpus
+// position with a transposition table, each worker running a fixed number of iterations. The iterations
+// counter gives iterations per second over all workers; with linear scaling it grows with the threads.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParallelScalingBenchmark {
+    private static final int ITERATIONS = 2000;  // per worker
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    @Param({"tree", "root"})
+    public String mode;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long iterations;
+    }
+
+    @Benchmark
+    public AmazonsAction search(Corpus corpus, Counters counters) {
+        int i = corpus.next();
+        MonteCarlo monteCarlo = new MonteCarlo(new TreeNode(corpus.boards[i], corpus.colors[i], true), Long.MAX_VALUE / 2, 1.4);
+        monteCarlo.setSearchMode(mode.equals("tree") ? MonteCarlo.SearchMode.TREE_PARALLEL : MonteCarlo.SearchMode.ROOT_PARALLEL);
+        monteCarlo.setThreads(threads);
+        monteCarlo.setTranspositionTableSize(1 << 16);
+        monteCarlo.setSeed(i);
+        monteCarlo.setMaxIterations(ITERATIONS);
+        AmazonsAction action = monteCarlo.MCTS();
+        counters.iterations += (long) threads * ITERATIONS;
+        return action;
+    }
+}
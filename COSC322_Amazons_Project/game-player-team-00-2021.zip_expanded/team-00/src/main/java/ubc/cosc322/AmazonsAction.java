@@ -14,44 +14,69 @@ public class AmazonsAction {
         this.arrowDestY = arrowDestY;
     }
 
-    // applies the complete move (queen move plus arrow shot) to the provided state,
-    // returns a new state: [updated board, updated mobility map]
-    public static int[][][] applyAction(AmazonsAction action, int[][][] state) {
-        int size = 10;
-        int[][] board = state[0];
-        int[][] mobilityMap = state[1];
-
-        // deep copies of the board and mobility map
-        int[][] newBoard = copy2DArray(board, size);
-        int[][] newMobility = copy2DArray(mobilityMap, size);
+    // applies the complete move (queen move plus arrow shot) to the provided position,
+    // returns a new position; the board itself is only six longs, so the copy is cheap,
+    // and its Zobrist hash is updated incrementally by the queen move and arrow shot
+    public static BitBoard applyAction(AmazonsAction action, BitBoard state) {
+        BitBoard newBoard = new BitBoard(state);
 
         //	 Move the queen from its source to destination
-        newBoard[action.queenDestY][action.queenDestX] = board[action.queenSrcY][action.queenSrcX];
-        newBoard[action.queenSrcY][action.queenSrcX] = 0;
-        //Fire the arrow (represented by 3)
-        newBoard[action.arrowDestY][action.arrowDestX] = 3;
-
-        // Adjust mobility around affected spots
-        // Where the queen left, mobility goes up
-        updateMobility(newMobility, action.queenSrcY, action.queenSrcX, +1);
-        // Where the queen lands, mobility is reduced
-        updateMobility(newMobility, action.queenDestY, action.queenDestX, -1);
-        // and the same here, the arrow landing reduces mobility
-        updateMobility(newMobility, action.arrowDestY, action.arrowDestX, -1);
-
-        return new int[][][]{newBoard, newMobility};
+        newBoard.moveQueen(BitBoard.square(action.queenSrcY, action.queenSrcX),
+                           BitBoard.square(action.queenDestY, action.queenDestX));
+        //Fire the arrow
+        newBoard.placeArrow(BitBoard.square(action.arrowDestY, action.arrowDestX));
+
+        // no mobility map to adjust: it is derived from the occupancy masks when needed
+        return newBoard;
     }
 
     // Apply only a queen move (ignoring arrow placement) and return a new board state
-    public static int[][] applyQueenMove(int queenSrcX, int queenSrcY, int queenDestX, int queenDestY, int[][][] state) {
-        int size = 10;
-        int[][] board = state[0];
-        int[][] newBoard = copy2DArray(board, size);
-        newBoard[queenDestY][queenDestX] = board[queenSrcY][queenSrcX];
-        newBoard[queenSrcY][queenSrcX] = 0;
+    public static BitBoard applyQueenMove(int queenSrcX, int queenSrcY, int queenDestX, int queenDestY, BitBoard state) {
+        BitBoard newBoard = new BitBoard(state);
+        newBoard.moveQueen(BitBoard.square(queenSrcY, queenSrcX), BitBoard.square(queenDestY, queenDestX));
         return newBoard;
     }
 
+    // Packed form of a move: one byte each for the queen source, queen destination and arrow square,
+    // every square given as y * 10 + x. Lets the move generator and the tree store moves as plain ints.
+    public static int pack(int queenSrc, int queenDest, int arrowDest) {
+        return queenSrc | (queenDest << 8) | (arrowDest << 16);
+    }
+
+    // arrow byte of a packed queen move whose arrow has not been chosen yet (split-ply trees)
+    public static final int NO_ARROW = 0xFF;
+
+    public static int getQueenSrc(int move) {
+        return move & 0xFF;
+    }
+
+    public static int getQueenDest(int move) {
+        return (move >>> 8) & 0xFF;
+    }
+
+    public static int getArrowDest(int move) {
+        return (move >>> 16) & 0xFF;
+    }
+
+    public int toPacked() {
+        return pack(BitBoard.square(queenSrcY, queenSrcX),
+                    BitBoard.square(queenDestY, queenDestX),
+                    BitBoard.square(arrowDestY, arrowDestX));
+    }
+
+    public static AmazonsAction fromPacked(int move) {
+        int src = getQueenSrc(move), dest = getQueenDest(move), arrow = getArrowDest(move);
+        return new AmazonsAction(src % BitBoard.SIZE, src / BitBoard.SIZE,
+                                 dest % BitBoard.SIZE, dest / BitBoard.SIZE,
+                                 arrow % BitBoard.SIZE, arrow / BitBoard.SIZE);
+    }
+
+    // applies a packed move to the position in place, no copy is made
+    public static void applyMove(int move, BitBoard board) {
+        board.moveQueen(getQueenSrc(move), getQueenDest(move));
+        board.placeArrow(getArrowDest(move));
+    }
+
     // Check if this action is equal to another action, all coordinates match
     public boolean isEqual(AmazonsAction other) {
         return (this.queenSrcX == other.queenSrcX &&
@@ -63,30 +88,13 @@ public class AmazonsAction {
     }
 
     public void printMove() {
-        System.out.println(queenSrcX + ", " + queenSrcY + " -> " +
-                           queenDestX + ", " + queenDestY + " ; arrow: " +
-                           arrowDestX + ", " + arrowDestY);
-    }
-
-    private static int[][] copy2DArray(int[][] array, int size) {
-        int[][] copy = new int[size][size];
-        for (int i = 0; i < size; i++) {
-            for (int j = 0; j < size; j++) {
-                copy[i][j] = array[i][j];
-            }
-        }
-        return copy;
+        System.out.println(this);
     }
 
-    // Update the mobility map around a given cell by adding the specified delta
-    // check all 8 adjacent cells for possible moves
-    private static void updateMobility(int[][] mobilityMap, int centerY, int centerX, int delta) {
-        for (int[] d : AmazonsUtility.DIRECTIONS) {
-            int newY = centerY + d[0];
-            int newX = centerX + d[1];
-            if (AmazonsUtility.isSpotValid(newY, newX)) {
-                mobilityMap[newY][newX] += delta;
-            }
-        }
+    @Override
+    public String toString() {
+        return queenSrcX + ", " + queenSrcY + " -> " +
+               queenDestX + ", " + queenDestY + " ; arrow: " +
+               arrowDestX + ", " + arrowDestY;
     }
 }
\ No newline at end of file
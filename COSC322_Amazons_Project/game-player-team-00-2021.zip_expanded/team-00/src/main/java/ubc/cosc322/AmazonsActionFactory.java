@@ -5,17 +5,121 @@ import java.util.LinkedList;
 import java.util.Queue;
 
 public class AmazonsActionFactory {
+    // upper bound on the number of moves in any position: 4 queens, at most 35 destinations each
+    // and at most 35 arrow squares from every destination
+    public static final int MAX_MOVES = 4 * 35 * 35;
+
+    // RAYS[sq][dir] lists the squares walked from sq in direction dir, nearest first, up to the board edge
+    static final int[][][] RAYS = new int[BitBoard.SQUARES][AmazonsUtility.DIRECTIONS.length][];
+
+    static {
+        for (int sq = 0; sq < BitBoard.SQUARES; sq++) {
+            int y = sq / BitBoard.SIZE, x = sq % BitBoard.SIZE;
+            for (int dir = 0; dir < AmazonsUtility.DIRECTIONS.length; dir++) {
+                int length = 0;
+                while (AmazonsUtility.isSpotValid(y + (length + 1) * AmazonsUtility.DIRECTIONS[dir][0],
+                                                  x + (length + 1) * AmazonsUtility.DIRECTIONS[dir][1])) {
+                    length++;
+                }
+                RAYS[sq][dir] = new int[length];
+                for (int d = 1; d <= length; d++) {
+                    RAYS[sq][dir][d - 1] = BitBoard.square(y + d * AmazonsUtility.DIRECTIONS[dir][0],
+                                                           x + d * AmazonsUtility.DIRECTIONS[dir][1]);
+                }
+            }
+        }
+    }
+
+    // Writes every move (queen move + arrow shot) for the color into the caller's buffer as packed ints
+    // (see AmazonsAction.pack) and returns how many were written. The buffer needs MAX_MOVES entries.
+    // Each queen is moved on the board in place while its arrows are listed and moved back afterwards,
+    // so nothing is allocated; moves come out in the same order as getActions.
+    public static int generateMoves(BitBoard board, int color, int[] moves) {
+        int count = 0;
+        long queensLo = (color == BitBoard.WHITE_QUEEN) ? board.whiteLo : board.blackLo;
+        long queensHi = (color == BitBoard.WHITE_QUEEN) ? board.whiteHi : board.blackHi;
+        while (queensLo != 0) {
+            count = generateMovesFrom(board, Long.numberOfTrailingZeros(queensLo), moves, count);
+            queensLo &= queensLo - 1;
+        }
+        while (queensHi != 0) {
+            count = generateMovesFrom(board, 64 + Long.numberOfTrailingZeros(queensHi), moves, count);
+            queensHi &= queensHi - 1;
+        }
+        return count;
+    }
+
+    // all moves of the queen standing on src, appended to moves from index count
+    private static int generateMovesFrom(BitBoard board, int src, int[] moves, int count) {
+        for (int[] ray : RAYS[src]) {
+            for (int dest : ray) {
+                if (!board.isEmpty(dest)) {
+                    break;
+                }
+                board.moveQueen(src, dest);
+                count = generateArrowShots(board, src, dest, moves, count);
+                board.moveQueen(dest, src);
+            }
+        }
+        return count;
+    }
+
+    // Queen moves only, for split-ply trees: writes pack(src, dest, NO_ARROW) for every queen
+    // destination of the color and returns the count (at most 4 * 35)
+    public static int generateQueenMoves(BitBoard board, int color, int[] moves) {
+        int count = 0;
+        long queensLo = (color == BitBoard.WHITE_QUEEN) ? board.whiteLo : board.blackLo;
+        long queensHi = (color == BitBoard.WHITE_QUEEN) ? board.whiteHi : board.blackHi;
+        while (queensLo != 0 || queensHi != 0) {
+            int src;
+            if (queensLo != 0) {
+                src = Long.numberOfTrailingZeros(queensLo);
+                queensLo &= queensLo - 1;
+            } else {
+                src = 64 + Long.numberOfTrailingZeros(queensHi);
+                queensHi &= queensHi - 1;
+            }
+            for (int[] ray : RAYS[src]) {
+                for (int dest : ray) {
+                    if (!board.isEmpty(dest)) {
+                        break;
+                    }
+                    moves[count++] = AmazonsAction.pack(src, dest, AmazonsAction.NO_ARROW);
+                }
+            }
+        }
+        return count;
+    }
+
+    // Arrow shots only, for split-ply trees: the board must already show the queen on its destination.
+    // Writes the complete packed moves of queenMove plus each arrow square and returns the count.
+    public static int generateArrowShots(BitBoard board, int queenMove, int[] moves) {
+        return generateArrowShots(board, AmazonsAction.getQueenSrc(queenMove), AmazonsAction.getQueenDest(queenMove), moves, 0);
+    }
+
+    // all arrow shots from dest once the queen has moved there from src
+    private static int generateArrowShots(BitBoard board, int src, int dest, int[] moves, int count) {
+        for (int[] ray : RAYS[dest]) {
+            for (int arrow : ray) {
+                if (!board.isEmpty(arrow)) {
+                    break;
+                }
+                moves[count++] = AmazonsAction.pack(src, dest, arrow);
+            }
+        }
+        return count;
+    }
+
     // returns all possible moves (queen move + arrow shot) for the specified color given the board state
-    public static ArrayList<AmazonsAction> getActions(int[][][] state, int color) {
+    public static ArrayList<AmazonsAction> getActions(BitBoard board, int color) {
         int size = 10;
-        int[][] board = state[0];
         ArrayList<AmazonsAction> allActions = new ArrayList<>();
 
         // collect queen positions for the specified color
         Queue<int[]> queenPositions = new LinkedList<>();
         for (int i = 0; i < size; i++) {
             for (int j = 0; j < size; j++) {
-                if (board[i][j] == color) {
+                if (board.get(i, j) == color) {
                     queenPositions.add(new int[] { i, j });
                 }
             }
@@ -34,7 +138,7 @@ public class AmazonsActionFactory {
                     int queenDestX = queenSrcX + d * dir[1];
                     if (AmazonsUtility.isSpotValid(board, queenDestY, queenDestX)) {
                         //for each valid queen move, generate all possible arrow moves
-                        allActions.addAll(getArrowMoves(queenSrcX, queenSrcY, queenDestX, queenDestY, state));
+                        allActions.addAll(getArrowMoves(queenSrcX, queenSrcY, queenDestX, queenDestY, board));
                     } else {
                         break;
                     }
@@ -45,11 +149,11 @@ public class AmazonsActionFactory {
     }
 
     // given a queen move (from queenSrc to queenDest), returns all arrow moves possible
-    private static ArrayList<AmazonsAction> getArrowMoves(int queenSrcX, int queenSrcY, int queenDestX, int queenDestY, int[][][] state) {
+    private static ArrayList<AmazonsAction> getArrowMoves(int queenSrcX, int queenSrcY, int queenDestX, int queenDestY, BitBoard state) {
         int size = 10;
         ArrayList<AmazonsAction> arrowMoves = new ArrayList<>();
         // get board state after moving the queen
-        int[][] boardAfterQueen = AmazonsAction.applyQueenMove(queenSrcX, queenSrcY, queenDestX, queenDestY, state);
+        BitBoard boardAfterQueen = AmazonsAction.applyQueenMove(queenSrcX, queenSrcY, queenDestX, queenDestY, state);
 
         // try shooting an arrow in every direction from the queen's new position to see best move
         for (int[] dir : AmazonsUtility.DIRECTIONS) {
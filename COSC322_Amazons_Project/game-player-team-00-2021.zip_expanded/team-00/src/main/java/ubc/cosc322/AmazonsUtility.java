@@ -16,7 +16,7 @@ public class AmazonsUtility {
 
     // Returns a mobility map (as a 10x10 grid) indicating how many directions are available	
     // from each square on the board (only counts if the adjacent spot is valid).
-    public static int[][] getMobilityMap(int[][] board) {
+    public static int[][] getMobilityMap(BitBoard board) {
         int size = 10;
         int[][] mobilityMap = new int[size][size];
         for (int i = 0; i < size; i++) {
@@ -35,6 +35,11 @@ public class AmazonsUtility {
         return mobilityMap;
     }
 
+    // Print a bitboard position the same way
+    public static void printBoard(BitBoard board) {
+        printBoard(board.toArray());
+    }
+
     // Nicely prints the board with a border. Displays a space for 0, 'X' for 3, and the number otherwise
     public static void printBoard(int[][] board) {
         int size = 10;
@@ -68,6 +73,40 @@ public class AmazonsUtility {
         return isSpotValid(y, x) && board[y][x] == 0;
     }
 
+    // same check against a bitboard position
+    public static boolean isSpotValid(BitBoard board, int y, int x) {
+        return isSpotValid(y, x) && board.isEmpty(BitBoard.square(y, x));
+    }
+
+    // log, square root and inverse square root of visit counts below MATH_TABLE_SIZE are looked up, as the
+    // selection step needs them for every child it compares
+    private static final int MATH_TABLE_SIZE = 1 << 16;
+    private static final double[] LOG_TABLE = new double[MATH_TABLE_SIZE];
+    private static final double[] SQRT_TABLE = new double[MATH_TABLE_SIZE];
+    private static final double[] INVERSE_SQRT_TABLE = new double[MATH_TABLE_SIZE];
+
+    static {
+        for (int n = 0; n < MATH_TABLE_SIZE; n++) {
+            LOG_TABLE[n] = Math.log(n);
+            SQRT_TABLE[n] = Math.sqrt(n);
+            INVERSE_SQRT_TABLE[n] = 1 / Math.sqrt(n);
+        }
+    }
+
+    // natural log of a count
+    public static double log(int n) {
+        return (n < MATH_TABLE_SIZE) ? LOG_TABLE[n] : Math.log(n);
+    }
+
+    public static double sqrt(int n) {
+        return (n < MATH_TABLE_SIZE) ? SQRT_TABLE[n] : Math.sqrt(n);
+    }
+
+    // 1 / sqrt(n), infinite for 0
+    public static double inverseSqrt(int n) {
+        return (n < MATH_TABLE_SIZE) ? INVERSE_SQRT_TABLE[n] : 1 / Math.sqrt(n);
+    }
+
     //  basic sigmoid function that squashes input values. The divisor (5) softens the steepness
     public static double sigmoid(double x) {
         return 1 / (1 + Math.exp(-x / 5));
@@ -0,0 +1,340 @@
+package ubc.cosc322;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+// Headless self-play: two MonteCarlo configurations play each other in-process, with the arena standing in
+// for the game server. It keeps the real board, checks every move against the legal moves (an illegal move
+// loses), passes each move on to both engines, and declares the side left without moves the loser, like
+// COSC322Test does against the server. Games run concurrently on a thread pool. Game 2k and 2k+1 start from
+// the same random opening with the colours swapped, so neither engine profits from a lucky opening.
+//
+//   java ubc.cosc322.Arena [--games n] [--time ms] [--iterations n] [--opening plies] [--threads n]
+//                          [--a spec] [--b spec] [--csv file] [--moves file] [--verbose]
+//
+// An engine spec is a comma-separated list of key=value settings applied on top of the MonteCarlo defaults,
+// the same way COSC322Test applies its engine spec: ordering, tt, cache, store and offheap (sizes, offheap
+// is a store outside the heap), endgame (node limit), split, bitboard and ponder (true/false), mode
+// (sequential, root or tree), threads, batch (leaves per batched evaluation), clock (ms for the whole game,
+// shared out by a TimeManager instead of --time per move), playout (plies per leaf playout, or end), book
+// (opening book file),
+// e.g. --a split=true,tt=1048576 --b split=true
+public class Arena {
+    private static final int WHITE_QUEEN = 1;
+    private static final int BLACK_QUEEN = 2;
+
+    // per game: which colour engine A played, who won, and the search time of every move of each engine,
+    // also in the order of play with the colour that moved, from ply firstPly on (after the opening)
+    static class GameResult {
+        final int game;
+        final int colorA;
+        final int firstPly;
+        int winner;
+        int plies;
+        boolean illegal;
+        final List<Long> timesA = new ArrayList<>();
+        final List<Long> timesB = new ArrayList<>();
+        final List<Long> moveTimes = new ArrayList<>();
+        final List<Integer> moveColors = new ArrayList<>();
+
+        GameResult(int game, int colorA, int firstPly) {
+            this.game = game;
+            this.colorA = colorA;
+            this.firstPly = firstPly;
+        }
+
+        boolean wonByA() {
+            return winner == colorA;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int games = 20, openingPlies = 2, iterations = 0;
+        long moveTimeMs = 500;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String specA = "", specB = "", csv = null, movesCsv = null;
+        boolean verbose = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--games": games = Integer.parseInt(args[++i]); break;
+                case "--time": moveTimeMs = Long.parseLong(args[++i]); break;
+                case "--iterations": iterations = Integer.parseInt(args[++i]); break;
+                case "--opening": openingPlies = Integer.parseInt(args[++i]); break;
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--a": specA = args[++i]; break;
+                case "--b": specB = args[++i]; break;
+                case "--csv": csv = args[++i]; break;
+                case "--moves": movesCsv = args[++i]; break;
+                case "--verbose": verbose = true; break;
+                default:
+                    System.out.println("usage: Arena [--games n] [--time ms] [--iterations n] [--opening plies] "
+                                     + "[--threads n] [--a spec] [--b spec] [--csv file] [--moves file] [--verbose]");
+                    return;
+            }
+        }
+        Consumer<MonteCarlo> configA = parseSpec(specA), configB = parseSpec(specB);
+
+        // the engines print their search statistics, which is noise from concurrent games
+        PrintStream out = System.out;
+        if (!verbose) {
+            System.setOut(new PrintStream(new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                }
+            }));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<GameResult>> futures = new ArrayList<>();
+        final long timeMs = moveTimeMs;
+        final int budget = iterations, opening = openingPlies;
+        for (int g = 0; g < games; g++) {
+            final int game = g;
+            futures.add(pool.submit(() -> playGame(game, configA, configB, timeMs, budget, opening)));
+        }
+        List<GameResult> results = new ArrayList<>();
+        long start = System.currentTimeMillis();
+        for (Future<GameResult> future : futures) {
+            GameResult result = future.get();
+            results.add(result);
+            out.printf(Locale.ROOT, "game %d: A (%s) %s in %d plies%s%n", result.game, colorName(result.colorA),
+                       result.wonByA() ? "won" : "lost", result.plies, result.illegal ? ", illegal move" : "");
+        }
+        pool.shutdown();
+        System.setOut(out);
+
+        report(out, results, (System.currentTimeMillis() - start) / 1000.0);
+        if (csv != null) {
+            writeCsv(csv, results);
+        }
+        if (movesCsv != null) {
+            writeMovesCsv(movesCsv, results);
+        }
+    }
+
+    // one game from a random opening shared by the pair of games (2k, 2k+1), A playing black in even games
+    static GameResult playGame(int game, Consumer<MonteCarlo> configA, Consumer<MonteCarlo> configB,
+                               long moveTimeMs, int iterations, int openingPlies) {
+        int colorA = (game % 2 == 0) ? BLACK_QUEEN : WHITE_QUEEN;
+        GameResult result = new GameResult(game, colorA, openingPlies);
+        BitBoard board = BitBoard.startPosition();
+        int color = BLACK_QUEEN;
+        int[] moves = new int[AmazonsActionFactory.MAX_MOVES];
+        Random random = new Random(game / 2);
+        for (int ply = 0; ply < openingPlies; ply++) {
+            int count = AmazonsActionFactory.generateMoves(board, color, moves);
+            AmazonsAction.applyMove(moves[random.nextInt(count)], board);
+            color = opponent(color);
+        }
+
+        MonteCarlo a = createEngine(board, color, configA, moveTimeMs, iterations, game);
+        MonteCarlo b = createEngine(board, color, configB, moveTimeMs, iterations, game);
+        while (true) {
+            int count = AmazonsActionFactory.generateMoves(board, color, moves);
+            if (count == 0) {
+                result.winner = opponent(color);
+                break;
+            }
+            boolean turnA = color == colorA;
+            MonteCarlo engine = turnA ? a : b;
+            long started = System.nanoTime();
+            AmazonsAction action = engine.MCTS();
+            long elapsedMs = (System.nanoTime() - started) / 1000000;
+            (turnA ? result.timesA : result.timesB).add(elapsedMs);
+            result.moveTimes.add(elapsedMs);
+            result.moveColors.add(color);
+            if (action == null || !isLegal(action.toPacked(), moves, count)) {
+                // the server would reject the move, which ends the game
+                result.illegal = true;
+                result.winner = opponent(color);
+                break;
+            }
+            AmazonsAction.applyMove(action.toPacked(), board);
+            a.rootFromAction(action);
+            b.rootFromAction(action);
+            if (engine.isPonderingEnabled()) {
+                engine.startPondering();  // until the opponent's move reaches it through rootFromAction
+            }
+            result.plies++;
+            color = opponent(color);
+        }
+        a.stopPondering();
+        b.stopPondering();
+        return result;
+    }
+
+    private static MonteCarlo createEngine(BitBoard board, int color, Consumer<MonteCarlo> config,
+                                           long moveTimeMs, int iterations, int game) {
+        MonteCarlo engine = new MonteCarlo(new TreeNode(new BitBoard(board), color), moveTimeMs, 1.4);
+        engine.setThreads(1);
+        engine.setMaxIterations(iterations);
+        engine.setSeed(game);
+        config.accept(engine);
+        return engine;
+    }
+
+    private static boolean isLegal(int move, int[] moves, int count) {
+        for (int i = 0; i < count; i++) {
+            if (moves[i] == move) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // the settings of an engine spec, applied after the defaults of createEngine
+    static Consumer<MonteCarlo> parseSpec(String spec) {
+        Consumer<MonteCarlo> config = engine -> { };
+        for (String setting : spec.split(",")) {
+            if (setting.isEmpty()) {
+                continue;
+            }
+            String[] keyValue = setting.split("=", 2);
+            if (keyValue.length != 2) {
+                throw new IllegalArgumentException("expected key=value, got " + setting);
+            }
+            String value = keyValue[1];
+            Consumer<MonteCarlo> step;
+            switch (keyValue[0]) {
+                case "ordering": step = engine -> engine.setMoveOrdering(Double.parseDouble(value)); break;
+                case "tt": step = engine -> engine.setTranspositionTableSize(Integer.parseInt(value)); break;
+                case "cache": step = engine -> engine.setEvaluationCacheSize(Integer.parseInt(value)); break;
+                case "store": step = engine -> engine.setNodeBudget(Integer.parseInt(value)); break;
+                case "offheap": step = engine -> engine.setNodeBudget(Integer.parseInt(value), true); break;
+                case "endgame": step = engine -> engine.setEndgameNodeLimit(Integer.parseInt(value)); break;
+                case "split": step = engine -> engine.setSplitPly(Boolean.parseBoolean(value)); break;
+                case "bitboard": step = engine -> engine.setBitboardEvaluation(Boolean.parseBoolean(value)); break;
+                case "threads": step = engine -> engine.setThreads(Integer.parseInt(value)); break;
+                case "clock": step = engine -> engine.setTimeManager(TimeManager.forClock(Long.parseLong(value))); break;
+                case "playout": step = engine -> engine.setPlayoutDepth(parsePlayout(value)); break;
+                case "book": step = bookSetting(value); break;
+                case "ponder": step = engine -> engine.setPonderingEnabled(Boolean.parseBoolean(value)); break;
+                case "batch": step = engine -> engine.setBatchSize(Integer.parseInt(value)); break;
+                case "mode": step = engine -> engine.setSearchMode(parseMode(value)); break;
+                default: throw new IllegalArgumentException("unknown engine setting " + keyValue[0]);
+            }
+            config = config.andThen(step);
+        }
+        return config;
+    }
+
+    private static MonteCarlo.SearchMode parseMode(String mode) {
+        switch (mode) {
+            case "sequential": return MonteCarlo.SearchMode.SEQUENTIAL;
+            case "root": return MonteCarlo.SearchMode.ROOT_PARALLEL;
+            case "tree": return MonteCarlo.SearchMode.TREE_PARALLEL;
+            default: throw new IllegalArgumentException("unknown search mode " + mode);
+        }
+    }
+
+    // the book is opened once, here, and shared by every engine the spec configures
+    private static Consumer<MonteCarlo> bookSetting(String path) {
+        OpeningBook book;
+        try {
+            book = OpeningBook.open(path);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("can't open opening book " + path, e);
+        }
+        return engine -> engine.setOpeningBook(book);
+    }
+
+    private static int parsePlayout(String plies) {
+        return plies.equals("end") ? PlayoutEngine.TO_END : Integer.parseInt(plies);
+    }
+
+    // A's score with a 95% confidence interval, then the move times of both engines
+    private static void report(PrintStream out, List<GameResult> results, double seconds) {
+        int wins = 0, illegal = 0;
+        for (GameResult result : results) {
+            wins += result.wonByA() ? 1 : 0;
+            illegal += result.illegal ? 1 : 0;
+        }
+        int games = results.size();
+        double rate = (games > 0) ? (double) wins / games : 0;
+        double margin = (games > 0) ? 1.96 * Math.sqrt(rate * (1 - rate) / games) : 0;
+        out.printf(Locale.ROOT, "A won %d/%d = %.1f%% +- %.1f%% (95%%), %d illegal moves, %.1f s%n",
+                   wins, games, 100 * rate, 100 * margin, illegal, seconds);
+        printTimes(out, "A", results, true);
+        printTimes(out, "B", results, false);
+    }
+
+    private static void printTimes(PrintStream out, String name, List<GameResult> results, boolean engineA) {
+        long total = 0, max = 0;
+        int moves = 0;
+        for (GameResult result : results) {
+            for (long time : engineA ? result.timesA : result.timesB) {
+                total += time;
+                max = Math.max(max, time);
+                moves++;
+            }
+        }
+        out.printf(Locale.ROOT, "%s: %d moves, %.1f ms per move, %d ms max%n",
+                   name, moves, (moves > 0) ? (double) total / moves : 0.0, max);
+    }
+
+    // one line per game: game, A's colour, winner, plies, illegal, then A's and B's mean and max move time
+    private static void writeCsv(String path, List<GameResult> results) throws IOException {
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(Paths.get(path)))) {
+            writer.println("game,color_a,winner,plies,illegal,mean_ms_a,max_ms_a,mean_ms_b,max_ms_b");
+            for (GameResult result : results) {
+                writer.printf(Locale.ROOT, "%d,%s,%s,%d,%b,%.1f,%d,%.1f,%d%n", result.game,
+                              colorName(result.colorA), result.wonByA() ? "A" : "B", result.plies, result.illegal,
+                              mean(result.timesA), max(result.timesA), mean(result.timesB), max(result.timesB));
+            }
+        }
+    }
+
+    // one line per move: game, ply (counting the opening), the engine and colour that moved, search time
+    private static void writeMovesCsv(String path, List<GameResult> results) throws IOException {
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(Paths.get(path)))) {
+            writer.println("game,ply,engine,color,ms");
+            for (GameResult result : results) {
+                for (int i = 0; i < result.moveTimes.size(); i++) {
+                    int color = result.moveColors.get(i);
+                    writer.printf(Locale.ROOT, "%d,%d,%s,%s,%d%n", result.game, result.firstPly + i,
+                                  (color == result.colorA) ? "A" : "B", colorName(color), result.moveTimes.get(i));
+                }
+            }
+        }
+    }
+
+    private static double mean(List<Long> times) {
+        long total = 0;
+        for (long time : times) {
+            total += time;
+        }
+        return times.isEmpty() ? 0.0 : (double) total / times.size();
+    }
+
+    private static long max(List<Long> times) {
+        long max = 0;
+        for (long time : times) {
+            max = Math.max(max, time);
+        }
+        return max;
+    }
+
+    private static int opponent(int color) {
+        return (color == WHITE_QUEEN) ? BLACK_QUEEN : WHITE_QUEEN;
+    }
+
+    private static String colorName(int color) {
+        return (color == WHITE_QUEEN) ? "white" : "black";
+    }
+}
@@ -0,0 +1,87 @@
+package ubc.cosc322;
+
+// NodeStore on the Java heap: one primitive array per field, all allocated up front for the whole budget.
+public class ArrayNodeStore extends NodeStore {
+    private final int[] visits;
+    private final double[] value;
+    private final int[] move;
+    private final int[] firstChild;
+    private final int[] numChildren;
+    private final int[] numExpanded;
+    private final int[] forward;
+
+    public ArrayNodeStore(int capacity) {
+        super(capacity);
+        this.visits = new int[this.capacity];
+        this.value = new double[this.capacity];
+        this.move = new int[this.capacity];
+        this.firstChild = new int[this.capacity];
+        this.numChildren = new int[this.capacity];
+        this.numExpanded = new int[this.capacity];
+        this.forward = new int[this.capacity];
+    }
+
+    @Override
+    public int getVisits(int node) {
+        return visits[node];
+    }
+
+    @Override
+    public double getValue(int node) {
+        return value[node];
+    }
+
+    @Override
+    public int getMove(int node) {
+        return move[node];
+    }
+
+    @Override
+    public int getFirstChild(int node) {
+        return firstChild[node];
+    }
+
+    @Override
+    public int getNumChildren(int node) {
+        return numChildren[node];
+    }
+
+    @Override
+    public int getNumExpanded(int node) {
+        return numExpanded[node];
+    }
+
+    @Override
+    public void update(int node, double result) {
+        visits[node]++;
+        value[node] += result;
+    }
+
+    @Override
+    void setStatistics(int node, int nodeVisits, double nodeValue) {
+        visits[node] = nodeVisits;
+        value[node] = nodeValue;
+    }
+
+    @Override
+    void setMove(int node, int nodeMove) {
+        move[node] = nodeMove;
+    }
+
+    @Override
+    void setBlock(int node, int first, int count, int expanded) {
+        firstChild[node] = first;
+        numChildren[node] = count;
+        numExpanded[node] = expanded;
+    }
+
+    @Override
+    int getForward(int node) {
+        return forward[node];
+    }
+
+    @Override
+    void setForward(int node, int to) {
+        forward[node] = to;
+    }
+}
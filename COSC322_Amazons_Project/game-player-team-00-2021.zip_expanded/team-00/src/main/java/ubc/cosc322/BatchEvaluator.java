@@ -0,0 +1,161 @@
+package ubc.cosc322;
+
+import java.util.Arrays;
+
+// Evaluates a batch of leaves together, with the same metrics as HeuristicEvaluator. The distance maps of
+// all positions are computed first into one structure-of-arrays buffer per map (CELLS ints per position,
+// one position after the other), then the territory and control sums run over the whole batch in a
+// Kernel. The SIMD kernel (VectorKernel, jdk.incubator.vector) is only built with the "vector" Maven
+// profile and needs --add-modules jdk.incubator.vector at run time; without it the scalar loops of
+// HeuristicEvaluator are used, which give exactly the scores of getHeuristicEval. The vector kernel sums
+// in a different order, so its scores can differ from them in the last few bits.
+public class BatchEvaluator {
+    private static final int WHITE_QUEEN = 1;
+    private static final int BLACK_QUEEN = 2;
+    private static final int CELLS = HeuristicEvaluator.CELLS;
+
+    // the metric sums over count positions of distance maps, see HeuristicEvaluator.queenMetrics / kingMetrics
+    interface Kernel {
+        void queenMetrics(int[] white, int[] black, int count, int[] playerTurns,
+                          double[] territory, double[] control, double[] diffWeight);
+
+        void kingMetrics(int[] white, int[] black, int count, int[] playerTurns,
+                         double[] territory, double[] control);
+    }
+
+    static final Kernel SCALAR = new Kernel() {
+        @Override
+        public void queenMetrics(int[] white, int[] black, int count, int[] playerTurns,
+                                 double[] territory, double[] control, double[] diffWeight) {
+            for (int i = 0; i < count; i++) {
+                double[] metrics = HeuristicEvaluator.queenMetrics(white, black, i * CELLS, playerTurns[i]);
+                territory[i] = metrics[0];
+                control[i] = metrics[1];
+                diffWeight[i] = metrics[2];
+            }
+        }
+
+        @Override
+        public void kingMetrics(int[] white, int[] black, int count, int[] playerTurns,
+                                double[] territory, double[] control) {
+            for (int i = 0; i < count; i++) {
+                double[] metrics = HeuristicEvaluator.kingMetrics(white, black, i * CELLS, playerTurns[i]);
+                territory[i] = metrics[0];
+                control[i] = metrics[1];
+            }
+        }
+    };
+
+    private static final Kernel KERNEL = loadKernel();
+
+    // the SIMD kernel if it was compiled in and the incubator module is present, otherwise the scalar one
+    private static Kernel loadKernel() {
+        try {
+            return (Kernel) Class.forName("ubc.cosc322.VectorKernel").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return SCALAR;
+        }
+    }
+
+    // whether batches are evaluated with the Vector API
+    public static boolean isVectorized() {
+        return KERNEL != SCALAR;
+    }
+
+    private final int capacity;
+    private int size;
+    private final BitBoard[] boards;
+    private final int[] playerTurns;
+    private final double[] scores;
+    private final int[] whiteMaps, blackMaps;
+    private final int[] turns;
+    private final int[] kingPositions;  // batch index of every position that needs the king metrics
+    private final double[] t1, c1, diffWeight, mobility;
+    private final double[] t2, c2;      // king metrics, packed like kingPositions
+
+    public BatchEvaluator(int capacity) {
+        this.capacity = capacity;
+        this.boards = new BitBoard[capacity];
+        this.playerTurns = new int[capacity];
+        this.scores = new double[capacity];
+        this.whiteMaps = new int[capacity * CELLS];
+        this.blackMaps = new int[capacity * CELLS];
+        this.turns = new int[capacity];
+        this.kingPositions = new int[capacity];
+        this.t1 = new double[capacity];
+        this.c1 = new double[capacity];
+        this.diffWeight = new double[capacity];
+        this.t2 = new double[capacity];
+        this.c2 = new double[capacity];
+        this.mobility = new double[capacity];
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    // number of positions added since the last clear
+    public int size() {
+        return size;
+    }
+
+    // queue a position for the next evaluate() and return its slot; at most capacity between clears
+    public int add(BitBoard board, int playerTurn) {
+        boards[size] = board;
+        playerTurns[size] = playerTurn;
+        return size++;
+    }
+
+    // the score of the position in a slot, after evaluate()
+    public double getScore(int slot) {
+        return scores[slot];
+    }
+
+    // forget the queued positions
+    public void clear() {
+        Arrays.fill(boards, 0, size, null);
+        size = 0;
+    }
+
+    // score every queued position
+    public void evaluate() {
+        int count = size;
+        HeuristicEvaluator.Scratch scratch = HeuristicEvaluator.scratch();
+        for (int i = 0; i < count; i++) {
+            HeuristicEvaluator.fillBlocked(boards[i], scratch.blocked);
+            HeuristicEvaluator.propagateDistances(boards[i], scratch, scratch.whiteQueen, WHITE_QUEEN);
+            HeuristicEvaluator.propagateDistances(boards[i], scratch, scratch.blackQueen, BLACK_QUEEN);
+            System.arraycopy(scratch.whiteQueen, 0, whiteMaps, i * CELLS, CELLS);
+            System.arraycopy(scratch.blackQueen, 0, blackMaps, i * CELLS, CELLS);
+            turns[i] = playerTurns[i];
+        }
+        KERNEL.queenMetrics(whiteMaps, blackMaps, count, turns, t1, c1, diffWeight);
+
+        // the king maps and mobility only for the positions where they count, packed to the front of the
+        // map buffers, whose queen maps have been summed already
+        int kings = 0;
+        for (int i = 0; i < count; i++) {
+            mobility[i] = 0.0;
+            if (diffWeight[i] > 10.0) {
+                HeuristicEvaluator.fillBlocked(boards[i], scratch.blocked);
+                HeuristicEvaluator.propagateKingDistances(boards[i], scratch.whiteKing, WHITE_QUEEN);
+                HeuristicEvaluator.propagateKingDistances(boards[i], scratch.blackKing, BLACK_QUEEN);
+                System.arraycopy(scratch.whiteKing, 0, whiteMaps, kings * CELLS, CELLS);
+                System.arraycopy(scratch.blackKing, 0, blackMaps, kings * CELLS, CELLS);
+                mobility[i] = HeuristicEvaluator.evaluateMobility(boards[i], diffWeight[i], scratch);
+                turns[kings] = playerTurns[i];
+                kingPositions[kings++] = i;
+            }
+        }
+        KERNEL.kingMetrics(whiteMaps, blackMaps, kings, turns, t2, c2);
+        for (int i = 0, k = 0; i < count; i++) {
+            boolean king = k < kings && kingPositions[k] == i;
+            // like getHeuristicEval, a diffWeight under the threshold counts as 0
+            scores[i] = HeuristicEvaluator.combine(t1[i], c1[i], king ? diffWeight[i] : 0.0,
+                    king ? t2[k] : 0.0, king ? c2[k] : 0.0, mobility[i]);
+            if (king) {
+                k++;
+            }
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package ubc.cosc322;
+
+// Compact board position: one 100-bit occupancy mask each for white queens, black queens and arrows.
+// Every mask is split over two longs, squares 0-63 in the low word and 64-99 in the high word,
+// where the square index is y * 10 + x. A position costs six longs instead of two 10x10 int arrays,
+// and the mobility map is derived from the occupancy on demand instead of being copied around.
+public class BitBoard {
+    public static final int SIZE = 10;
+    public static final int SQUARES = SIZE * SIZE;
+
+    // piece values, the same encoding the int[][] boards and the game server use
+    public static final int EMPTY = 0;
+    public static final int WHITE_QUEEN = 1;
+    public static final int BLACK_QUEEN = 2;
+    public static final int ARROW = 3;
+
+    // low/high words of the neighbour mask (the 8 surrounding squares) of every square
+    static final long[] NEIGHBOURS_LO = new long[SQUARES];
+    static final long[] NEIGHBOURS_HI = new long[SQUARES];
+
+    // Zobrist keys: one random 64-bit key per (piece, square), plus one for white to move. The hash of a
+    // position is the XOR of the keys of everything on it and is kept up to date by every mutator, so
+    // applying a move costs a few XORs. Fixed seed, so hashes are stable between runs.
+    private static final long[][] ZOBRIST_KEYS = new long[ARROW + 1][SQUARES];
+    private static final long WHITE_TO_MOVE_KEY;
+
+    static {
+        long state = 0x322A4A2035L;
+        for (int piece = WHITE_QUEEN; piece <= ARROW; piece++) {
+            for (int sq = 0; sq < SQUARES; sq++) {
+                state += 0x9E3779B97F4A7C15L;
+                ZOBRIST_KEYS[piece][sq] = mix(state);
+            }
+        }
+        state += 0x9E3779B97F4A7C15L;
+        WHITE_TO_MOVE_KEY = mix(state);
+
+        for (int sq = 0; sq < SQUARES; sq++) {
+            int y = sq / SIZE, x = sq % SIZE;
+            for (int[] dir : AmazonsUtility.DIRECTIONS) {
+                int newY = y + dir[0], newX = x + dir[1];
+                if (AmazonsUtility.isSpotValid(newY, newX)) {
+                    int n = square(newY, newX);
+                    NEIGHBOURS_LO[sq] |= lowBit(n);
+                    NEIGHBOURS_HI[sq] |= highBit(n);
+                }
+            }
+        }
+    }
+
+    long whiteLo, whiteHi;
+    long blackLo, blackHi;
+    long arrowLo, arrowHi;
+    long hash;          // Zobrist hash of the pieces on the board
+
+    // empty board
+    public BitBoard() {
+    }
+
+    // the opening position, in the same orientation as the board COSC322Test sets up
+    public static BitBoard startPosition() {
+        BitBoard bits = new BitBoard();
+        bits.set(square(0, 3), WHITE_QUEEN);
+        bits.set(square(0, 6), WHITE_QUEEN);
+        bits.set(square(3, 0), WHITE_QUEEN);
+        bits.set(square(3, 9), WHITE_QUEEN);
+        bits.set(square(6, 0), BLACK_QUEEN);
+        bits.set(square(6, 9), BLACK_QUEEN);
+        bits.set(square(9, 3), BLACK_QUEEN);
+        bits.set(square(9, 6), BLACK_QUEEN);
+        return bits;
+    }
+
+    // copy constructor
+    public BitBoard(BitBoard other) {
+        this.whiteLo = other.whiteLo;
+        this.whiteHi = other.whiteHi;
+        this.blackLo = other.blackLo;
+        this.blackHi = other.blackHi;
+        this.arrowLo = other.arrowLo;
+        this.arrowHi = other.arrowHi;
+        this.hash = other.hash;
+    }
+
+    // overwrite this board with another position, for boards reused in place
+    public void copyFrom(BitBoard other) {
+        this.whiteLo = other.whiteLo;
+        this.whiteHi = other.whiteHi;
+        this.blackLo = other.blackLo;
+        this.blackHi = other.blackHi;
+        this.arrowLo = other.arrowLo;
+        this.arrowHi = other.arrowHi;
+        this.hash = other.hash;
+    }
+
+    // build a position from a 10x10 board indexed [y][x] holding 0, 1, 2 or 3
+    public static BitBoard fromArray(int[][] board) {
+        BitBoard bits = new BitBoard();
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                bits.set(square(y, x), board[y][x]);
+            }
+        }
+        return bits;
+    }
+
+    // expand back into a 10x10 board, used for printing and the GUI
+    public int[][] toArray() {
+        int[][] board = new int[SIZE][SIZE];
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                board[y][x] = get(square(y, x));
+            }
+        }
+        return board;
+    }
+
+    public static int square(int y, int x) {
+        return y * SIZE + x;
+    }
+
+    // single-bit masks of a square within the low and high words (0 when it lives in the other word)
+    static long lowBit(int sq) {
+        return sq < 64 ? 1L << sq : 0L;
+    }
+
+    static long highBit(int sq) {
+        return sq >= 64 ? 1L << (sq - 64) : 0L;
+    }
+
+    // SplitMix64 finaliser, spreads the bits of the key generator's counter
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // Zobrist hash of the pieces, independent of the side to move
+    public long getHash() {
+        return hash;
+    }
+
+    // hash of the position together with the side to move
+    public long getHash(int colorToMove) {
+        return (colorToMove == WHITE_QUEEN) ? hash ^ WHITE_TO_MOVE_KEY : hash;
+    }
+
+    public int getArrowCount() {
+        return Long.bitCount(arrowLo) + Long.bitCount(arrowHi);
+    }
+
+    // true if every arrow of the other position is also on this board
+    public boolean hasArrowsOf(BitBoard other) {
+        return (arrowLo & other.arrowLo) == other.arrowLo && (arrowHi & other.arrowHi) == other.arrowHi;
+    }
+
+    public long occupiedLo() {
+        return whiteLo | blackLo | arrowLo;
+    }
+
+    public long occupiedHi() {
+        return whiteHi | blackHi | arrowHi;
+    }
+
+    // the piece on a square: EMPTY, WHITE_QUEEN, BLACK_QUEEN or ARROW
+    public int get(int sq) {
+        long lo = lowBit(sq), hi = highBit(sq);
+        if (((whiteLo & lo) | (whiteHi & hi)) != 0) return WHITE_QUEEN;
+        if (((blackLo & lo) | (blackHi & hi)) != 0) return BLACK_QUEEN;
+        if (((arrowLo & lo) | (arrowHi & hi)) != 0) return ARROW;
+        return EMPTY;
+    }
+
+    public int get(int y, int x) {
+        return get(square(y, x));
+    }
+
+    // true if nothing stands on the square (no bounds check)
+    public boolean isEmpty(int sq) {
+        if (sq < 64) {
+            return ((whiteLo | blackLo | arrowLo) & (1L << sq)) == 0;
+        }
+        return ((whiteHi | blackHi | arrowHi) & (1L << (sq - 64))) == 0;
+    }
+
+    // move whichever queen stands on src to the (empty) square dst
+    public void moveQueen(int src, int dst) {
+        long lo = lowBit(src) | lowBit(dst);
+        long hi = highBit(src) | highBit(dst);
+        if (((whiteLo & lowBit(src)) | (whiteHi & highBit(src))) != 0) {
+            whiteLo ^= lo;
+            whiteHi ^= hi;
+            hash ^= ZOBRIST_KEYS[WHITE_QUEEN][src] ^ ZOBRIST_KEYS[WHITE_QUEEN][dst];
+        } else {
+            blackLo ^= lo;
+            blackHi ^= hi;
+            hash ^= ZOBRIST_KEYS[BLACK_QUEEN][src] ^ ZOBRIST_KEYS[BLACK_QUEEN][dst];
+        }
+    }
+
+    // fire an arrow onto an empty square
+    public void placeArrow(int sq) {
+        arrowLo |= lowBit(sq);
+        arrowHi |= highBit(sq);
+        hash ^= ZOBRIST_KEYS[ARROW][sq];
+    }
+
+    // take an arrow back off a square (used to undo in-place moves)
+    public void removeArrow(int sq) {
+        arrowLo &= ~lowBit(sq);
+        arrowHi &= ~highBit(sq);
+        hash ^= ZOBRIST_KEYS[ARROW][sq];
+    }
+
+    // put a piece on a square, overwriting whatever was there
+    public void set(int sq, int piece) {
+        int old = get(sq);
+        if (old != EMPTY) {
+            hash ^= ZOBRIST_KEYS[old][sq];
+        }
+        if (piece != EMPTY) {
+            hash ^= ZOBRIST_KEYS[piece][sq];
+        }
+        long lo = lowBit(sq), hi = highBit(sq);
+        whiteLo &= ~lo;
+        whiteHi &= ~hi;
+        blackLo &= ~lo;
+        blackHi &= ~hi;
+        arrowLo &= ~lo;
+        arrowHi &= ~hi;
+        if (piece == WHITE_QUEEN) {
+            whiteLo |= lo;
+            whiteHi |= hi;
+        } else if (piece == BLACK_QUEEN) {
+            blackLo |= lo;
+            blackHi |= hi;
+        } else if (piece == ARROW) {
+            arrowLo |= lo;
+            arrowHi |= hi;
+        }
+    }
+
+    // write the squares of the given colour's queens into squares, returns how many there are
+    public int getQueens(int color, int[] squares) {
+        long lo = (color == WHITE_QUEEN) ? whiteLo : blackLo;
+        long hi = (color == WHITE_QUEEN) ? whiteHi : blackHi;
+        int count = 0;
+        while (lo != 0) {
+            squares[count++] = Long.numberOfTrailingZeros(lo);
+            lo &= lo - 1;
+        }
+        while (hi != 0) {
+            squares[count++] = 64 + Long.numberOfTrailingZeros(hi);
+            hi &= hi - 1;
+        }
+        return count;
+    }
+
+    // number of empty squares around a square, i.e. the mobility map entry for it
+    public int countEmptyNeighbours(int sq) {
+        return Long.bitCount(NEIGHBOURS_LO[sq] & ~occupiedLo())
+             + Long.bitCount(NEIGHBOURS_HI[sq] & ~occupiedHi());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof BitBoard)) return false;
+        BitBoard other = (BitBoard) o;
+        return whiteLo == other.whiteLo && whiteHi == other.whiteHi
+            && blackLo == other.blackLo && blackHi == other.blackHi
+            && arrowLo == other.arrowLo && arrowHi == other.arrowHi;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
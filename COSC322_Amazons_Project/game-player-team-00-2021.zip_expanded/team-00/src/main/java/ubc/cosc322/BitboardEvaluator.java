@@ -0,0 +1,253 @@
+package ubc.cosc322;
+
+import java.util.Arrays;
+
+// Bit-parallel version of HeuristicEvaluator. Distances are computed a whole layer at a time: the squares
+// at distance d + 1 are the empty, unreached squares one king step, or one queen line, away from layer d.
+// The territory and control sums then come from popcounts over the layers instead of per-square loops.
+// The king metrics match the scalar evaluator. The queen layers are the true queen distances, while the
+// scalar search stops a line at squares that already have the next distance, so it can overestimate some
+// squares; the queen metrics can therefore differ slightly. Selected with MonteCarlo.setBitboardEvaluation.
+public class BitboardEvaluator {
+    private static final int WHITE_QUEEN = 1;
+    private static final int BLACK_QUEEN = 2;
+    private static final double TURN_ADVANTAGE = 0.15;
+
+    // the 100 squares are bits 0-63 of the low word and 0-35 of the high word
+    private static final long BOARD_HI = (1L << (BitBoard.SQUARES - 64)) - 1;
+    // everything but column 0 / column 9, to drop bits that wrapped around a row edge after a shift
+    private static final long NOT_COL0_LO, NOT_COL0_HI, NOT_COL9_LO, NOT_COL9_HI;
+
+    // square offset of each of the 8 directions, in the order of AmazonsUtility.DIRECTIONS, and the masks
+    // applied after shifting that way: a step to the right can't land on column 0, one to the left not on 9
+    private static final int[] STEPS = new int[AmazonsUtility.DIRECTIONS.length];
+    private static final long[] STEP_MASK_LO = new long[STEPS.length];
+    private static final long[] STEP_MASK_HI = new long[STEPS.length];
+
+    // per-thread scratch, reused for every evaluation so nothing is allocated per leaf
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private static class Scratch {
+        final long[][][] layers = new long[2][2][BitBoard.SQUARES + 1];  // [colour][lo/hi][distance]
+        final int[] queens = new int[4];
+    }
+
+    static {
+        long col0Lo = 0, col0Hi = 0, col9Lo = 0, col9Hi = 0;
+        for (int y = 0; y < BitBoard.SIZE; y++) {
+            col0Lo |= BitBoard.lowBit(BitBoard.square(y, 0));
+            col0Hi |= BitBoard.highBit(BitBoard.square(y, 0));
+            col9Lo |= BitBoard.lowBit(BitBoard.square(y, 9));
+            col9Hi |= BitBoard.highBit(BitBoard.square(y, 9));
+        }
+        NOT_COL0_LO = ~col0Lo;
+        NOT_COL0_HI = ~col0Hi & BOARD_HI;
+        NOT_COL9_LO = ~col9Lo;
+        NOT_COL9_HI = ~col9Hi & BOARD_HI;
+        for (int dir = 0; dir < STEPS.length; dir++) {
+            int dx = AmazonsUtility.DIRECTIONS[dir][1];
+            STEPS[dir] = AmazonsUtility.DIRECTIONS[dir][0] * BitBoard.SIZE + dx;
+            STEP_MASK_LO[dir] = (dx == 1) ? NOT_COL0_LO : (dx == -1) ? NOT_COL9_LO : -1L;
+            STEP_MASK_HI[dir] = (dx == 1) ? NOT_COL0_HI : (dx == -1) ? NOT_COL9_HI : BOARD_HI;
+        }
+    }
+
+    public static double getHeuristicEval(BitBoard board, int playerTurn) {
+        Scratch scratch = SCRATCH.get();
+        long[][][] layers = scratch.layers;
+        long emptyLo = ~board.occupiedLo();
+        long emptyHi = ~board.occupiedHi() & BOARD_HI;
+
+        int whiteDepth = propagateLayers(board.whiteLo, board.whiteHi, emptyLo, emptyHi, layers[0], false);
+        int blackDepth = propagateLayers(board.blackLo, board.blackHi, emptyLo, emptyHi, layers[1], false);
+        double[] queenMetrics = calculateQueenDistanceMetrics(layers, whiteDepth, blackDepth, playerTurn);
+        double t1 = queenMetrics[0];
+        double c1 = queenMetrics[1];
+        double diffWeight = queenMetrics[2];
+
+        double t2 = 0.0, c2 = 0.0, mobilityEval = 0.0;
+
+        if (diffWeight > 10.0) {
+            whiteDepth = propagateLayers(board.whiteLo, board.whiteHi, emptyLo, emptyHi, layers[0], true);
+            blackDepth = propagateLayers(board.blackLo, board.blackHi, emptyLo, emptyHi, layers[1], true);
+            double[] kingMetrics = calculateKingDistanceMetrics(layers, whiteDepth, blackDepth, playerTurn);
+            t2 = kingMetrics[0];
+            c2 = kingMetrics[1];
+            mobilityEval = evaluateMobility(board, diffWeight, scratch.queens);
+        } else {
+            diffWeight = 0.0;
+        }
+
+        double territoryEval = ((100.0 - diffWeight) / 100.0) * t1
+                             + ((1.0 - (100.0 - diffWeight) / 100.0) / 4.0) * (c1 + t2 + c2);
+        return territoryEval + mobilityEval;
+    }
+
+    // the true queen distance of every square, Integer.MAX_VALUE where the colour can't get to; for
+    // comparing with HeuristicEvaluator.queenDistances
+    static int[] queenDistances(BitBoard board, int queenType) {
+        long[][] layer = SCRATCH.get().layers[0];
+        long queensLo = (queenType == WHITE_QUEEN) ? board.whiteLo : board.blackLo;
+        long queensHi = (queenType == WHITE_QUEEN) ? board.whiteHi : board.blackHi;
+        int depth = propagateLayers(queensLo, queensHi, ~board.occupiedLo(), ~board.occupiedHi() & BOARD_HI, layer, false);
+        int[] distances = new int[BitBoard.SQUARES];
+        Arrays.fill(distances, Integer.MAX_VALUE);
+        for (int d = 0; d < depth; d++) {
+            for (int sq = 0; sq < BitBoard.SQUARES; sq++) {
+                if ((((sq < 64) ? layer[0][d] >>> sq : layer[1][d] >>> (sq - 64)) & 1) != 0) {
+                    distances[sq] = d;
+                }
+            }
+        }
+        return distances;
+    }
+
+    // territory and control from the king distances alone
+    static double[] kingMetrics(BitBoard board, int playerTurn) {
+        long[][][] layers = SCRATCH.get().layers;
+        long emptyLo = ~board.occupiedLo();
+        long emptyHi = ~board.occupiedHi() & BOARD_HI;
+        int whiteDepth = propagateLayers(board.whiteLo, board.whiteHi, emptyLo, emptyHi, layers[0], true);
+        int blackDepth = propagateLayers(board.blackLo, board.blackHi, emptyLo, emptyHi, layers[1], true);
+        return calculateKingDistanceMetrics(layers, whiteDepth, blackDepth, playerTurn);
+    }
+
+    // Fill layer[lo/hi][d] with the squares at distance d from the queens, by king steps or queen lines,
+    // and return the number of layers
+    private static int propagateLayers(long queensLo, long queensHi, long emptyLo, long emptyHi, long[][] layer, boolean king) {
+        long reachedLo = queensLo, reachedHi = queensHi;
+        long ringLo = queensLo, ringHi = queensHi;
+        int depth = 0;
+        while ((ringLo | ringHi) != 0) {
+            layer[0][depth] = ringLo;
+            layer[1][depth] = ringHi;
+            depth++;
+            long nextLo = 0, nextHi = 0;
+            for (int dir = 0; dir < STEPS.length; dir++) {
+                // walk the whole ring one square at a time in this direction, for queens until all lines are blocked
+                long lo = ringLo, hi = ringHi;
+                do {
+                    long shiftedLo = shiftLo(lo, hi, STEPS[dir]) & STEP_MASK_LO[dir] & emptyLo;
+                    hi = shiftHi(lo, hi, STEPS[dir]) & STEP_MASK_HI[dir] & emptyHi;
+                    lo = shiftedLo;
+                    nextLo |= lo;
+                    nextHi |= hi;
+                } while (!king && (lo | hi) != 0);
+            }
+            ringLo = nextLo & ~reachedLo;
+            ringHi = nextHi & ~reachedHi;
+            reachedLo |= ringLo;
+            reachedHi |= ringHi;
+        }
+        return depth;
+    }
+
+    // low and high word of the 100-bit mask moved by step squares, positive steps towards higher squares
+    private static long shiftLo(long lo, long hi, int step) {
+        return (step > 0) ? lo << step : (lo >>> -step) | (hi << (64 + step));
+    }
+
+    private static long shiftHi(long lo, long hi, int step) {
+        return (step > 0) ? (hi << step) | (lo >>> (64 - step)) : hi >>> -step;
+    }
+
+    private static int count(long lo, long hi) {
+        return Long.bitCount(lo) + Long.bitCount(hi);
+    }
+
+    // Territory: a square counts for the colour with the smaller distance, a tie for the player to move.
+    // Per distance d: white's layer d minus every black square within d, and the other way round, and ties.
+    private static double territory(long[][][] layers, int whiteDepth, int blackDepth, int playerTurn) {
+        long[][] white = layers[0], black = layers[1];
+        double score = 0.0;
+        long whiteWithinLo = 0, whiteWithinHi = 0, blackWithinLo = 0, blackWithinHi = 0;
+        for (int d = 0; d < Math.max(whiteDepth, blackDepth); d++) {
+            long wLo = (d < whiteDepth) ? white[0][d] : 0, wHi = (d < whiteDepth) ? white[1][d] : 0;
+            long bLo = (d < blackDepth) ? black[0][d] : 0, bHi = (d < blackDepth) ? black[1][d] : 0;
+            whiteWithinLo |= wLo;
+            whiteWithinHi |= wHi;
+            blackWithinLo |= bLo;
+            blackWithinHi |= bHi;
+            score += count(wLo & ~blackWithinLo, wHi & ~blackWithinHi);
+            score -= count(bLo & ~whiteWithinLo, bHi & ~whiteWithinHi);
+            score += count(wLo & bLo, wHi & bHi) * (playerTurn == WHITE_QUEEN ? TURN_ADVANTAGE : -TURN_ADVANTAGE);
+        }
+        return score;
+    }
+
+    private static double[] calculateQueenDistanceMetrics(long[][][] layers, int whiteDepth, int blackDepth, int playerTurn) {
+        long[][] white = layers[0], black = layers[1];
+        double score = territory(layers, whiteDepth, blackDepth, playerTurn);
+
+        // sum of 2^-white - 2^-black over the squares, unreached squares adding nothing
+        double controlScore = 0.0;
+        for (int d = 0; d < Math.max(whiteDepth, blackDepth); d++) {
+            int difference = ((d < whiteDepth) ? count(white[0][d], white[1][d]) : 0)
+                           - ((d < blackDepth) ? count(black[0][d], black[1][d]) : 0);
+            controlScore += Math.scalb((double) difference, -d);
+        }
+
+        // 2^-|white - black| over the squares both colours reach, one pair of layers at a time
+        double diffWeight = 0.0;
+        for (int dw = 0; dw < whiteDepth; dw++) {
+            for (int db = 0; db < blackDepth; db++) {
+                int both = count(white[0][dw] & black[0][db], white[1][dw] & black[1][db]);
+                if (both != 0) {
+                    diffWeight += Math.scalb((double) both, -Math.abs(dw - db));
+                }
+            }
+        }
+        return new double[]{score, 2.0 * controlScore, diffWeight};
+    }
+
+    private static double[] calculateKingDistanceMetrics(long[][][] layers, int whiteDepth, int blackDepth, int playerTurn) {
+        long[][] white = layers[0], black = layers[1];
+        double score = territory(layers, whiteDepth, blackDepth, playerTurn);
+
+        // (black - white) / 6 clamped to [-1, 1]: pairs of layers for squares both reach, and a full
+        // +1 or -1 for the squares only one colour reaches
+        double controlMetric = 0.0;
+        long whiteLo = 0, whiteHi = 0, blackLo = 0, blackHi = 0;
+        for (int dw = 0; dw < whiteDepth; dw++) {
+            whiteLo |= white[0][dw];
+            whiteHi |= white[1][dw];
+            for (int db = 0; db < blackDepth; db++) {
+                int both = count(white[0][dw] & black[0][db], white[1][dw] & black[1][db]);
+                if (both != 0) {
+                    controlMetric += both * Math.min(1, Math.max(-1, (db - dw) / 6.0));
+                }
+            }
+        }
+        for (int db = 0; db < blackDepth; db++) {
+            blackLo |= black[0][db];
+            blackHi |= black[1][db];
+        }
+        controlMetric += count(whiteLo & ~blackLo, whiteHi & ~blackHi);
+        controlMetric -= count(blackLo & ~whiteLo, blackHi & ~whiteHi);
+        return new double[]{score, controlMetric};
+    }
+
+    // the same mobility term as HeuristicEvaluator: per queen, the empty neighbours of every square on its
+    // lines, halved with every step away, squashed with 1.2^-x
+    private static double evaluateMobility(BitBoard board, double w, int[] queens) {
+        double whiteScore = 0.0, blackScore = 0.0;
+        for (int queenType = WHITE_QUEEN; queenType <= BLACK_QUEEN; queenType++) {
+            int count = board.getQueens(queenType, queens);
+            for (int i = 0; i < count; i++) {
+                int y = queens[i] / BitBoard.SIZE, x = queens[i] % BitBoard.SIZE;
+                double queenEval = 0.0;
+                for (int[] dir : AmazonsUtility.DIRECTIONS) {
+                    for (int d = 1; AmazonsUtility.isSpotValid(board, y + dir[0] * d, x + dir[1] * d); d++) {
+                        queenEval += Math.scalb((double) board.countEmptyNeighbours(BitBoard.square(y + dir[0] * d, x + dir[1] * d)), 1 - d);
+                    }
+                }
+                if (queenType == WHITE_QUEEN) {
+                    whiteScore += w * Math.pow(1.2, -queenEval) / 45.0;
+                } else {
+                    blackScore += w * Math.pow(1.2, -queenEval) / 45.0;
+                }
+            }
+        }
+        return blackScore - whiteScore;
+    }
+}
@@ -3,6 +3,7 @@ package ubc.cosc322;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import sfs2x.client.entities.Room;
 import ygraph.ai.smartfox.games.BaseGameGUI;
@@ -30,13 +31,19 @@ public class COSC322Test extends GamePlayer {
     private int myQueen = -1;
     private int opponentQueen = -1;
 
-    // provide a username as an argument
+    // Search options of the engine as an Arena engine spec, on top of the MonteCarlo defaults. An option
+    // only goes in here once Arena self-play shows it helps; none has so far.
+    private static final String DEFAULT_ENGINE = "";
+    private final Consumer<MonteCarlo> engineConfig;
+
+    // provide a username as an argument, optionally followed by an engine spec that replaces DEFAULT_ENGINE
     public static void main(String[] args) {
         String uname = "cosc322";
         if (args.length > 0) {
             uname = args[0];
         }
-        COSC322Test gamePlayer = new COSC322Test(uname, "cosc322");
+        String engine = (args.length > 1) ? args[1] : DEFAULT_ENGINE;
+        COSC322Test gamePlayer = new COSC322Test(uname, "cosc322", engine);
 
         // decide whether to run headless or start the GUI event loop
         if (gamePlayer.getGameGUI() == null) {
@@ -53,8 +60,14 @@ public class COSC322Test extends GamePlayer {
 
     //  sets up user credentials and instantiates the GUI
     public COSC322Test(String username, String password) {
+        this(username, password, DEFAULT_ENGINE);
+    }
+
+    // same, with the search options of an engine spec (see Arena.parseSpec)
+    public COSC322Test(String username, String password, String engineSpec) {
         this.username = username;
         this.password = password;
+        this.engineConfig = Arena.parseSpec(engineSpec);
         this.gui = new BaseGameGUI(this);
     }
 
@@ -111,6 +124,9 @@ public class COSC322Test extends GamePlayer {
             case GameMessage.GAME_STATE_BOARD:
                 ArrayList<Integer> boardState = (ArrayList<Integer>) msgDetails.get(AmazonsGameMessage.GAME_STATE);
                 gui.setGameState(boardState);
+                if (monteCarlo != null) {
+                    monteCarlo.stopPondering();
+                }
                 monteCarlo = null;
                 System.out.println("Board state received.");
                 break;
@@ -184,6 +200,10 @@ public class COSC322Test extends GamePlayer {
             gui.updateGameState(aiQueenPosCurr, aiQueenPosNext, aiArrowPos);
             client.sendMoveMessage(aiQueenPosCurr, aiQueenPosNext, aiArrowPos);
             monteCarlo.rootFromAction(action);
+            if (monteCarlo.isPonderingEnabled()) {
+                // use the opponent's thinking time to keep growing the tree below our move
+                monteCarlo.startPondering();
+            }
         } else { // action is only null when you lose, as you have no actions available
             System.out.println("You lose.");
 			System.exit(0); // if you lose then disconnect from the game
@@ -203,6 +223,7 @@ public class COSC322Test extends GamePlayer {
         );
         gui.updateGameState(currQueenPos, nextQueenPos, arrowPos);
         if (monteCarlo != null) {
+            // rootFromAction stops the ponder search at once and keeps the subtree of this move
             monteCarlo.rootFromAction(action);
 
 			//check to see if opponenet has no moves on their turn:
@@ -216,25 +237,25 @@ public class COSC322Test extends GamePlayer {
     public void InitalizeBoard() {
         System.out.println("Initializing board");
 
-        int[][][] state = new int[2][10][10];
+        int[][] board = new int[10][10];
 
         // hard coded but ideally set using stateArr
-        state[0][0][3] = WHITE_QUEEN;
-        state[0][0][6] = WHITE_QUEEN;
+        board[0][3] = WHITE_QUEEN;
+        board[0][6] = WHITE_QUEEN;
 
-        state[0][3][0] = WHITE_QUEEN;
-        state[0][3][9] = WHITE_QUEEN;
+        board[3][0] = WHITE_QUEEN;
+        board[3][9] = WHITE_QUEEN;
 
-        state[0][6][0] = BLACK_QUEEN;
-        state[0][6][9] = BLACK_QUEEN;
+        board[6][0] = BLACK_QUEEN;
+        board[6][9] = BLACK_QUEEN;
 
-        state[0][9][3] = BLACK_QUEEN;
-        state[0][9][6] = BLACK_QUEEN;
+        board[9][3] = BLACK_QUEEN;
+        board[9][6] = BLACK_QUEEN;
 
-        state[1] = AmazonsUtility.getMobilityMap(state[0]);
-        AmazonsUtility.printBoard(state[0]);
+        AmazonsUtility.printBoard(board);
 
-        monteCarlo = new MonteCarlo(new TreeNode(state, BLACK_QUEEN), 5000, 1.4);
+        monteCarlo = new MonteCarlo(new TreeNode(BitBoard.fromArray(board), BLACK_QUEEN), 5000, 1.4);
+        engineConfig.accept(monteCarlo);
     }
 
 	private boolean opponentHasNoMoves() {
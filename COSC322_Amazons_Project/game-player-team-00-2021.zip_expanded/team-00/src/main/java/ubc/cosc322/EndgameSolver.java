@@ -0,0 +1,238 @@
+package ubc.cosc322;
+
+import java.util.Arrays;
+
+// Exact play once the board has split into separate regions. A region is a group of squares connected by
+// king steps over everything but arrows (a queen's square opens up when it moves away); queen moves and
+// arrows never leave it, so regions don't affect each other. When no region holds queens of both colours,
+// the game is just a count: each side can make some number of moves in its own regions, and the player
+// to move loses unless they have more moves than the opponent. The count of a region is found by a depth-first search over its moves, stopped as
+// soon as a line fills every empty square, which is the case for most regions. Searches that run out of
+// nodes only give bounds: the longest line found so far, and the number of empty squares.
+public class EndgameSolver {
+    private static final int WHITE_QUEEN = 1;
+    private static final int BLACK_QUEEN = 2;
+    private static final int MAX_MEMO_ENTRIES = 1 << 20;
+    private static final int MEMO_SLOTS = 2 * MAX_MEMO_ENTRIES;  // a power of two, at most half full
+    private static final int EMPTY = -1;
+
+    private final int nodeLimit;
+    // longest line of moves from a single-colour region board, by hash; the boards only hold one colour,
+    // so the hash alone identifies them. Kept between moves, as the positions of one region recur.
+    // An open-addressed table with linear probing, EMPTY values marking free slots, so nothing is boxed.
+    private final long[] memoKeys = new long[MEMO_SLOTS];
+    private final int[] memoValues = new int[MEMO_SLOTS];
+    private int memoSize;
+    private final int[][] moves = new int[BitBoard.SQUARES + 1][];
+
+    // per solve: nodes searched, whether the limit was hit, and the first move of the longest line found
+    private int nodes;
+    private boolean aborted;
+    private int firstMove;
+
+    // the counts behind the last move solve returned: our moves, and bounds on the opponent's
+    private int ourMoves;
+    private int theirMovesLower;
+    private int theirMovesUpper;
+
+    // nodeLimit: nodes to search per region before settling for bounds
+    public EndgameSolver(int nodeLimit) {
+        this.nodeLimit = nodeLimit;
+        Arrays.fill(memoValues, EMPTY);
+    }
+
+    // Split the board into regions, writing the squares of each into regionsLo / regionsHi (SQUARES entries
+    // are always enough), and return how many there are. Arrows belong to no region.
+    public static int findRegions(BitBoard board, long[] regionsLo, long[] regionsHi) {
+        long openLo = ~board.arrowLo, openHi = ~board.arrowHi & ((1L << (BitBoard.SQUARES - 64)) - 1);
+        long unvisitedLo = openLo, unvisitedHi = openHi;
+        int count = 0;
+        while ((unvisitedLo | unvisitedHi) != 0) {
+            int sq = (unvisitedLo != 0) ? Long.numberOfTrailingZeros(unvisitedLo) : 64 + Long.numberOfTrailingZeros(unvisitedHi);
+            // flood one ring of neighbours at a time
+            long regionLo = BitBoard.lowBit(sq), regionHi = BitBoard.highBit(sq);
+            long ringLo = regionLo, ringHi = regionHi;
+            while ((ringLo | ringHi) != 0) {
+                long nextLo = 0, nextHi = 0;
+                for (long bits = ringLo; bits != 0; bits &= bits - 1) {
+                    int n = Long.numberOfTrailingZeros(bits);
+                    nextLo |= BitBoard.NEIGHBOURS_LO[n];
+                    nextHi |= BitBoard.NEIGHBOURS_HI[n];
+                }
+                for (long bits = ringHi; bits != 0; bits &= bits - 1) {
+                    int n = 64 + Long.numberOfTrailingZeros(bits);
+                    nextLo |= BitBoard.NEIGHBOURS_LO[n];
+                    nextHi |= BitBoard.NEIGHBOURS_HI[n];
+                }
+                ringLo = nextLo & openLo & ~regionLo;
+                ringHi = nextHi & openHi & ~regionHi;
+                regionLo |= ringLo;
+                regionHi |= ringHi;
+            }
+            regionsLo[count] = regionLo;
+            regionsHi[count] = regionHi;
+            count++;
+            unvisitedLo &= ~regionLo;
+            unvisitedHi &= ~regionHi;
+        }
+        return count;
+    }
+
+    // number of regions with queens of both colours in them; once it is 0 the game is decided by counting
+    public static int countContestedRegions(BitBoard board) {
+        long[] regionsLo = new long[BitBoard.SQUARES], regionsHi = new long[BitBoard.SQUARES];
+        int count = findRegions(board, regionsLo, regionsHi);
+        int contested = 0;
+        for (int i = 0; i < count; i++) {
+            if (hasQueens(board, WHITE_QUEEN, regionsLo[i], regionsHi[i]) && hasQueens(board, BLACK_QUEEN, regionsLo[i], regionsHi[i])) {
+                contested++;
+            }
+        }
+        return contested;
+    }
+
+    private static boolean hasQueens(BitBoard board, int color, long lo, long hi) {
+        return (color == WHITE_QUEEN) ? ((lo & board.whiteLo) | (hi & board.whiteHi)) != 0
+                                      : ((lo & board.blackLo) | (hi & board.blackHi)) != 0;
+    }
+
+    // The move for the player to move if the regions are separated and the longest line of every one of
+    // their regions is known exactly, otherwise null and the search has to decide. The move is the first
+    // of the longest line of one of their regions, which keeps every move they have.
+    public AmazonsAction solve(BitBoard board, int color) {
+        long[] regionsLo = new long[BitBoard.SQUARES], regionsHi = new long[BitBoard.SQUARES];
+        int count = findRegions(board, regionsLo, regionsHi);
+        int opponent = (color == WHITE_QUEEN) ? BLACK_QUEEN : WHITE_QUEEN;
+        for (int i = 0; i < count; i++) {
+            if (hasQueens(board, WHITE_QUEEN, regionsLo[i], regionsHi[i]) && hasQueens(board, BLACK_QUEEN, regionsLo[i], regionsHi[i])) {
+                return null;
+            }
+        }
+
+        int ours = 0, bestMove = -1, bestRegionMoves = 0;
+        int theirsLower = 0, theirsUpper = 0;
+        for (int i = 0; i < count; i++) {
+            if (hasQueens(board, color, regionsLo[i], regionsHi[i])) {
+                int regionMoves = solveRegion(board, color, regionsLo[i], regionsHi[i]);
+                if (aborted) {
+                    return null;  // too big to count exactly yet
+                }
+                ours += regionMoves;
+                if (regionMoves > bestRegionMoves) {
+                    bestRegionMoves = regionMoves;
+                    bestMove = firstMove;
+                }
+            } else if (hasQueens(board, opponent, regionsLo[i], regionsHi[i])) {
+                int regionMoves = solveRegion(board, opponent, regionsLo[i], regionsHi[i]);
+                theirsLower += regionMoves;
+                theirsUpper += aborted ? emptySquares(board, regionsLo[i], regionsHi[i]) : regionMoves;
+            }
+        }
+        if (bestMove == -1) {
+            return null;  // no moves left, nothing to play
+        }
+        ourMoves = ours;
+        theirMovesLower = theirsLower;
+        theirMovesUpper = theirsUpper;
+        return AmazonsAction.fromPacked(bestMove);
+    }
+
+    public int getOurMoves() {
+        return ourMoves;
+    }
+
+    public int getTheirMovesLower() {
+        return theirMovesLower;
+    }
+
+    // equal to the lower bound unless one of their regions was too big to count exactly
+    public int getTheirMovesUpper() {
+        return theirMovesUpper;
+    }
+
+    // Longest line of moves the colour can make in the region, with its first move in firstMove.
+    // Sets aborted if the node limit was hit; the result is then only a lower bound.
+    private int solveRegion(BitBoard board, int color, long regionLo, long regionHi) {
+        BitBoard region = new BitBoard();
+        for (int sq = 0; sq < BitBoard.SQUARES; sq++) {
+            boolean inside = ((regionLo & BitBoard.lowBit(sq)) | (regionHi & BitBoard.highBit(sq))) != 0;
+            region.set(sq, inside ? board.get(sq) : BitBoard.ARROW);
+        }
+        if (memoSize > MAX_MEMO_ENTRIES) {
+            Arrays.fill(memoValues, EMPTY);
+            memoSize = 0;
+        }
+        nodes = 0;
+        aborted = false;
+        firstMove = -1;
+        return longestLine(region, color, emptySquares(board, regionLo, regionHi), 0);
+    }
+
+    private static int emptySquares(BitBoard board, long regionLo, long regionHi) {
+        return Long.bitCount(regionLo & ~board.occupiedLo()) + Long.bitCount(regionHi & ~board.occupiedHi());
+    }
+
+    // Depth-first search for the longest line of moves; every move fills one square, so a line can't be
+    // longer than the empty squares and the search stops once a line fills them all
+    private int longestLine(BitBoard region, int color, int empty, int level) {
+        int known = (level > 0) ? memoGet(region.getHash()) : EMPTY;
+        if (known != EMPTY) {
+            return known;
+        }
+        if (moves[level] == null) {
+            moves[level] = new int[AmazonsActionFactory.MAX_MOVES];
+        }
+        int[] levelMoves = moves[level];
+        int count = AmazonsActionFactory.generateMoves(region, color, levelMoves);
+        int best = 0;
+        for (int i = 0; i < count && best < empty; i++) {
+            if (++nodes > nodeLimit) {
+                aborted = true;
+                break;
+            }
+            int move = levelMoves[i];
+            AmazonsAction.applyMove(move, region);
+            int line = 1 + longestLine(region, color, empty - 1, level + 1);
+            region.removeArrow(AmazonsAction.getArrowDest(move));
+            region.moveQueen(AmazonsAction.getQueenDest(move), AmazonsAction.getQueenSrc(move));
+            if (line > best) {
+                best = line;
+                if (level == 0) {
+                    firstMove = move;
+                }
+            }
+            if (aborted) {
+                break;
+            }
+        }
+        if (!aborted) {
+            memoPut(region.getHash(), best);
+        }
+        return best;
+    }
+
+    private int memoGet(long key) {
+        for (int slot = memoSlot(key); memoValues[slot] != EMPTY; slot = (slot + 1) & (MEMO_SLOTS - 1)) {
+            if (memoKeys[slot] == key) {
+                return memoValues[slot];
+            }
+        }
+        return EMPTY;
+    }
+
+    private void memoPut(long key, int value) {
+        int slot = memoSlot(key);
+        while (memoValues[slot] != EMPTY && memoKeys[slot] != key) {
+            slot = (slot + 1) & (MEMO_SLOTS - 1);
+        }
+        if (memoValues[slot] == EMPTY) {
+            memoSize++;
+        }
+        memoKeys[slot] = key;
+        memoValues[slot] = value;
+    }
+
+    private static int memoSlot(long key) {
+        return (int) (key ^ (key >>> 32)) & (MEMO_SLOTS - 1);
+    }
+}
@@ -0,0 +1,73 @@
+package ubc.cosc322;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+// Fixed-size cache of heuristic evaluations keyed by the Zobrist hash of the position and side to move.
+// A key maps to one slot and a new entry always replaces the old one. There are no locks: a slot is two
+// longs, the value bits and the key XOR the value bits, so an entry half overwritten by another thread
+// no longer matches its key and simply reads as a miss.
+public class EvaluationCache {
+    private final long[] keys;    // key ^ value bits
+    private final long[] values;  // Double.doubleToRawLongBits of the evaluation
+    private final int mask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    // entries is rounded down to a power of two
+    public EvaluationCache(int entries) {
+        int size = Integer.highestOneBit(Math.max(1, entries));
+        this.keys = new long[size];
+        this.values = new long[size];
+        this.mask = size - 1;
+    }
+
+    // the cached evaluation for the key (see BitBoard.getHash(int)), or NaN if there is none
+    public double get(long key) {
+        int slot = (int) (key ^ (key >>> 32)) & mask;
+        long bits = values[slot];
+        if ((keys[slot] ^ bits) == key) {
+            hits.increment();
+            return Double.longBitsToDouble(bits);
+        }
+        misses.increment();
+        return Double.NaN;
+    }
+
+    public void put(long key, double value) {
+        int slot = (int) (key ^ (key >>> 32)) & mask;
+        long bits = Double.doubleToRawLongBits(value);
+        values[slot] = bits;
+        keys[slot] = key ^ bits;
+    }
+
+    public int capacity() {
+        return keys.length;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    // share of lookups answered from the cache since the counters were last reset
+    public double getHitRate() {
+        long h = hits.sum(), total = h + misses.sum();
+        return (total == 0) ? 0.0 : (double) h / total;
+    }
+
+    public void resetCounters() {
+        hits.reset();
+        misses.reset();
+    }
+
+    // forget every entry, e.g. when the evaluator changes
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(values, 0);
+        resetCounters();
+    }
+}
@@ -1,19 +1,50 @@
 package ubc.cosc322;
 
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.Arrays;
 
 public class HeuristicEvaluator {
     private static final int WHITE_QUEEN = 1;
     private static final int BLACK_QUEEN = 2;
     private static final double TURN_ADVANTAGE = 0.15;
-    private static final int BOARD_SIZE = 10;
+    static final int UNREACHED = Integer.MAX_VALUE;
 
-    public static double getHeuristicEval(int[][][] state, int playerTurn) {
-        int[][] board = state[0];
-        int[][] mobilityMap = state[1];
+    // The searches run on a 12x12 mailbox: the board with a ring of blocked cells around it, so walking
+    // a line needs no bounds checks. CELL maps a square (y * 10 + x) to its cell, and the step offsets
+    // are in the order of AmazonsUtility.DIRECTIONS.
+    private static final int WIDTH = BitBoard.SIZE + 2;
+    static final int CELLS = WIDTH * WIDTH;
+    private static final int[] STEPS = {-WIDTH, -WIDTH - 1, -1, WIDTH - 1, WIDTH, WIDTH + 1, 1, -WIDTH + 1};
+    private static final int[] CELL = new int[BitBoard.SQUARES];
 
-        double[] queenMetrics = calculateQueenDistanceMetrics(board, playerTurn);
+    // POW2[k] = 2^-k, the same values Math.pow(2, -k) gives; no distance reaches the end of the table
+    private static final double[] POW2 = new double[BitBoard.SQUARES + 1];
+
+    // per-thread scratch, reused for every evaluation so nothing is allocated per leaf
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    static class Scratch {
+        final int[] blocked = new int[CELLS];       // 1 for pieces and the border, 0 for empty squares
+        final int[] whiteQueen = new int[CELLS];    // distance maps
+        final int[] blackQueen = new int[CELLS];
+        final int[] whiteKing = new int[CELLS];
+        final int[] blackKing = new int[CELLS];
+        final int[] queue = new int[BitBoard.SQUARES];
+    }
+
+    static {
+        for (int sq = 0; sq < BitBoard.SQUARES; sq++) {
+            CELL[sq] = (sq / BitBoard.SIZE + 1) * WIDTH + sq % BitBoard.SIZE + 1;
+        }
+        for (int k = 0; k < POW2.length; k++) {
+            POW2[k] = Math.pow(2, -k);
+        }
+    }
+
+    public static double getHeuristicEval(BitBoard board, int playerTurn) {
+        Scratch scratch = SCRATCH.get();
+        fillBlocked(board, scratch.blocked);
+
+        double[] queenMetrics = calculateQueenDistanceMetrics(board, playerTurn, scratch);
         double t1 = queenMetrics[0];
         double c1 = queenMetrics[1];
         double diffWeight = queenMetrics[2];
@@ -21,176 +52,205 @@ public class HeuristicEvaluator {
         double t2 = 0.0, c2 = 0.0, mobilityEval = 0.0;
 
         if (diffWeight > 10.0) {
-            double[] kingMetrics = calculateKingDistanceMetrics(board, playerTurn);
+            double[] kingMetrics = calculateKingDistanceMetrics(board, playerTurn, scratch);
             t2 = kingMetrics[0];
             c2 = kingMetrics[1];
-            mobilityEval = evaluateMobility(board, mobilityMap, diffWeight);
+            mobilityEval = evaluateMobility(board, diffWeight, scratch);
         } else {
             diffWeight = 0.0;
         }
 
+        return combine(t1, c1, diffWeight, t2, c2, mobilityEval);
+    }
+
+    // the score from the queen metrics, the king metrics and mobility (diffWeight 0 below the threshold)
+    static double combine(double t1, double c1, double diffWeight, double t2, double c2, double mobilityEval) {
         double territoryEval = ((100.0 - diffWeight) / 100.0) * t1
                              + ((1.0 - (100.0 - diffWeight) / 100.0) / 4.0) * (c1 + t2 + c2);
         return territoryEval + mobilityEval;
     }
 
-    private static double[] calculateQueenDistanceMetrics(int[][] board, int playerTurn) {
-        int[][] whiteDistances = new int[BOARD_SIZE][BOARD_SIZE];
-        int[][] blackDistances = new int[BOARD_SIZE][BOARD_SIZE];
-        initializeDistances(whiteDistances);
-        initializeDistances(blackDistances);
-
-        propagateDistances(board, whiteDistances, WHITE_QUEEN);
-        propagateDistances(board, blackDistances, BLACK_QUEEN);
+    // the calling thread's scratch, for BatchEvaluator
+    static Scratch scratch() {
+        return SCRATCH.get();
+    }
 
-        double score = 0.0, controlScore = 0.0, diffWeight = 0.0;
-        for (int i = 0; i < BOARD_SIZE; i++) {
-            for (int j = 0; j < BOARD_SIZE; j++) {
-                controlScore += Math.pow(2, -whiteDistances[i][j]) - Math.pow(2, -blackDistances[i][j]);
-                if (whiteDistances[i][j] != Integer.MAX_VALUE && blackDistances[i][j] != Integer.MAX_VALUE) {
-                    diffWeight += Math.pow(2, -Math.abs(whiteDistances[i][j] - blackDistances[i][j]));
-                }
-                if (whiteDistances[i][j] < blackDistances[i][j]) {
-                    score += 1.0;
-                } else if (whiteDistances[i][j] > blackDistances[i][j]) {
-                    score -= 1.0;
-                } else if (whiteDistances[i][j] != Integer.MAX_VALUE) {
-                    score += (playerTurn == WHITE_QUEEN ? TURN_ADVANTAGE : -TURN_ADVANTAGE);
-                }
+    // mark the pieces and the border as blocked
+    static void fillBlocked(BitBoard board, int[] blocked) {
+        Arrays.fill(blocked, 1);
+        for (int sq = 0; sq < BitBoard.SQUARES; sq++) {
+            if (board.isEmpty(sq)) {
+                blocked[CELL[sq]] = 0;
             }
         }
-        return new double[]{score, 2.0 * controlScore, diffWeight};
     }
 
-    private static void initializeDistances(int[][] distances) {
-        for (int i = 0; i < BOARD_SIZE; i++) {
-            for (int j = 0; j < BOARD_SIZE; j++) {
-                distances[i][j] = Integer.MAX_VALUE;
-            }
+    // the queen distance of every square as propagateDistances finds it, UNREACHED where the colour can't
+    // get to; for comparing with the true distances of BitboardEvaluator
+    static int[] queenDistances(BitBoard board, int queenType) {
+        Scratch scratch = SCRATCH.get();
+        fillBlocked(board, scratch.blocked);
+        propagateDistances(board, scratch, scratch.whiteQueen, queenType);
+        int[] distances = new int[BitBoard.SQUARES];
+        for (int sq = 0; sq < BitBoard.SQUARES; sq++) {
+            distances[sq] = scratch.whiteQueen[CELL[sq]];
         }
+        return distances;
     }
 
-    private static void propagateDistances(int[][] board, int[][] distances, int queenType) {
-        Queue<int[]> queue = new LinkedList<>();
-        for (int i = 0; i < BOARD_SIZE; i++) {
-            for (int j = 0; j < BOARD_SIZE; j++) {
-                if (board[i][j] == queenType) {
-                    queue.add(new int[]{i, j});
-                    distances[i][j] = 0;
-                }
+    // territory and control from the king distances alone
+    static double[] kingMetrics(BitBoard board, int playerTurn) {
+        return calculateKingDistanceMetrics(board, playerTurn, SCRATCH.get());
+    }
+
+    // 2^-distance, 0 for squares the colour can't reach
+    private static double pow2(int distance) {
+        return (distance == UNREACHED) ? 0.0 : POW2[distance];
+    }
+
+    private static double[] calculateQueenDistanceMetrics(BitBoard board, int playerTurn, Scratch scratch) {
+        int[] whiteDistances = scratch.whiteQueen;
+        int[] blackDistances = scratch.blackQueen;
+        propagateDistances(board, scratch, whiteDistances, WHITE_QUEEN);
+        propagateDistances(board, scratch, blackDistances, BLACK_QUEEN);
+        return queenMetrics(whiteDistances, blackDistances, 0, playerTurn);
+    }
+
+    // territory, control and diffWeight from the queen distance maps stored at offset in the two arrays
+    static double[] queenMetrics(int[] whiteDistances, int[] blackDistances, int offset, int playerTurn) {
+        double score = 0.0, controlScore = 0.0, diffWeight = 0.0;
+        for (int sq = 0; sq < BitBoard.SQUARES; sq++) {
+            int white = whiteDistances[offset + CELL[sq]], black = blackDistances[offset + CELL[sq]];
+            controlScore += pow2(white) - pow2(black);
+            if (white != UNREACHED && black != UNREACHED) {
+                diffWeight += POW2[Math.abs(white - black)];
+            }
+            if (white < black) {
+                score += 1.0;
+            } else if (white > black) {
+                score -= 1.0;
+            } else if (white != UNREACHED) {
+                score += (playerTurn == WHITE_QUEEN ? TURN_ADVANTAGE : -TURN_ADVANTAGE);
             }
         }
+        return new double[]{score, 2.0 * controlScore, diffWeight};
+    }
 
-        int[][] directions = {
-            {-1, 0}, {-1, -1}, {0, -1}, {1, -1},
-            {1, 0}, {1, 1}, {0, 1}, {-1, 1}
-        };
-
-        while (!queue.isEmpty()) {
-            int[] pos = queue.poll();
-            int posY = pos[0], posX = pos[1];
-            int nextDist = distances[posY][posX] + 1;
-
-            for (int[] dir : directions) {
-                for (int d = 1; d < BOARD_SIZE; d++) {
-                    int newY = posY + dir[0] * d, newX = posX + dir[1] * d;
-                    if (AmazonsUtility.isSpotValid(board, newY, newX) && distances[newY][newX] > nextDist) {
-                        distances[newY][newX] = nextDist;
-                        queue.add(new int[]{newY, newX});
-                    } else {
-                        break;
-                    }
+    // Breadth-first search from every queen of the colour along queen lines. A line is followed until it
+    // hits a piece or a square that already has the next distance or less. The queue is seeded and the
+    // lines are walked in the same order as the original 10x10 version, which matters: stopping at
+    // squares of the next distance makes the maps depend on that order.
+    static void propagateDistances(BitBoard board, Scratch scratch, int[] distances, int queenType) {
+        int[] blocked = scratch.blocked;
+        int[] queue = scratch.queue;
+        Arrays.fill(distances, UNREACHED);
+        int tail = board.getQueens(queenType, queue);
+        for (int i = 0; i < tail; i++) {
+            queue[i] = CELL[queue[i]];
+            distances[queue[i]] = 0;
+        }
+
+        int head = 0;
+        while (head < tail) {
+            int cell = queue[head++];
+            int nextDist = distances[cell] + 1;
+
+            for (int step : STEPS) {
+                for (int target = cell + step; blocked[target] == 0 && distances[target] > nextDist; target += step) {
+                    distances[target] = nextDist;
+                    queue[tail++] = target;
                 }
             }
         }
     }
 
-    private static double[] calculateKingDistanceMetrics(int[][] board, int playerTurn) {
-        int[][] whiteDistances = new int[BOARD_SIZE][BOARD_SIZE];
-        int[][] blackDistances = new int[BOARD_SIZE][BOARD_SIZE];
-        initializeDistances(whiteDistances);
-        initializeDistances(blackDistances);
-
+    private static double[] calculateKingDistanceMetrics(BitBoard board, int playerTurn, Scratch scratch) {
+        int[] whiteDistances = scratch.whiteKing;
+        int[] blackDistances = scratch.blackKing;
         propagateKingDistances(board, whiteDistances, WHITE_QUEEN);
         propagateKingDistances(board, blackDistances, BLACK_QUEEN);
+        return kingMetrics(whiteDistances, blackDistances, 0, playerTurn);
+    }
 
+    // territory and control from the king distance maps stored at offset in the two arrays
+    static double[] kingMetrics(int[] whiteDistances, int[] blackDistances, int offset, int playerTurn) {
         double score = 0.0, controlMetric = 0.0;
-        for (int i = 0; i < BOARD_SIZE; i++) {
-            for (int j = 0; j < BOARD_SIZE; j++) {
-                controlMetric += Math.min(1, Math.max(-1, (blackDistances[i][j] - whiteDistances[i][j]) / 6.0));
-                if (whiteDistances[i][j] < blackDistances[i][j]) {
-                    score += 1.0;
-                } else if (whiteDistances[i][j] > blackDistances[i][j]) {
-                    score -= 1.0;
-                } else if (whiteDistances[i][j] != Integer.MAX_VALUE) {
-                    score += (playerTurn == WHITE_QUEEN ? TURN_ADVANTAGE : -TURN_ADVANTAGE);
-                }
+        for (int sq = 0; sq < BitBoard.SQUARES; sq++) {
+            int white = whiteDistances[offset + CELL[sq]], black = blackDistances[offset + CELL[sq]];
+            controlMetric += Math.min(1, Math.max(-1, (black - white) / 6.0));
+            if (white < black) {
+                score += 1.0;
+            } else if (white > black) {
+                score -= 1.0;
+            } else if (white != UNREACHED) {
+                score += (playerTurn == WHITE_QUEEN ? TURN_ADVANTAGE : -TURN_ADVANTAGE);
             }
         }
         return new double[]{score, controlMetric};
     }
 
-    private static void propagateKingDistances(int[][] board, int[][] distances, int queenType) {
-        Queue<int[]> queue = new LinkedList<>();
-        for (int i = 0; i < BOARD_SIZE; i++) {
-            for (int j = 0; j < BOARD_SIZE; j++) {
-                if (board[i][j] == queenType) {
-                    queue.add(new int[]{i, j});
-                    distances[i][j] = 0;
-                }
+    // King steps give a plain breadth-first search, so it is done a whole distance at a time on the
+    // occupancy masks: the next ring is the empty, unreached neighbours of the current one.
+    static void propagateKingDistances(BitBoard board, int[] distances, int queenType) {
+        Arrays.fill(distances, UNREACHED);
+        long emptyLo = ~board.occupiedLo(), emptyHi = ~board.occupiedHi();
+        long ringLo = (queenType == WHITE_QUEEN) ? board.whiteLo : board.blackLo;
+        long ringHi = (queenType == WHITE_QUEEN) ? board.whiteHi : board.blackHi;
+        long reachedLo = ringLo, reachedHi = ringHi;
+        int distance = 0;
+        while ((ringLo | ringHi) != 0) {
+            long nextLo = 0, nextHi = 0;
+            for (long bits = ringLo; bits != 0; bits &= bits - 1) {
+                int sq = Long.numberOfTrailingZeros(bits);
+                distances[CELL[sq]] = distance;
+                nextLo |= BitBoard.NEIGHBOURS_LO[sq];
+                nextHi |= BitBoard.NEIGHBOURS_HI[sq];
             }
-        }
-
-        int[][] directions = {
-            {-1, 0}, {-1, -1}, {0, -1}, {1, -1},
-            {1, 0}, {1, 1}, {0, 1}, {-1, 1}
-        };
-
-        while (!queue.isEmpty()) {
-            int[] pos = queue.poll();
-            int posY = pos[0], posX = pos[1];
-            int nextDist = distances[posY][posX] + 1;
-
-            for (int[] dir : directions) {
-                int newY = posY + dir[0], newX = posX + dir[1];
-                if (AmazonsUtility.isSpotValid(board, newY, newX) && distances[newY][newX] > nextDist) {
-                    distances[newY][newX] = nextDist;
-                    queue.add(new int[]{newY, newX});
-                }
+            for (long bits = ringHi; bits != 0; bits &= bits - 1) {
+                int sq = 64 + Long.numberOfTrailingZeros(bits);
+                distances[CELL[sq]] = distance;
+                nextLo |= BitBoard.NEIGHBOURS_LO[sq];
+                nextHi |= BitBoard.NEIGHBOURS_HI[sq];
             }
+            ringLo = nextLo & emptyLo & ~reachedLo;
+            ringHi = nextHi & emptyHi & ~reachedHi;
+            reachedLo |= ringLo;
+            reachedHi |= ringHi;
+            distance++;
         }
     }
 
-    private static double evaluateMobility(int[][] board, int[][] mobilityMap, double w) {
+    static double evaluateMobility(BitBoard board, double w, Scratch scratch) {
+        int[] blocked = scratch.blocked;
+        int[] queens = scratch.queue;
         double whiteScore = 0.0, blackScore = 0.0;
 
-        int[][] directions = {
-            {-1, 0}, {-1, -1}, {0, -1}, {1, -1},
-            {1, 0}, {1, 1}, {0, 1}, {-1, 1}
-        };
-
-        for (int i = 0; i < BOARD_SIZE; i++) {
-            for (int j = 0; j < BOARD_SIZE; j++) {
-                if (board[i][j] == WHITE_QUEEN || board[i][j] == BLACK_QUEEN) {
-                    double queenEval = 0.0;
-                    for (int[] dir : directions) {
-                        for (int d = 1; d < BOARD_SIZE; d++) {
-                            int newY = i + dir[0] * d, newX = j + dir[1] * d;
-                            if (AmazonsUtility.isSpotValid(board, newY, newX)) {
-                                queenEval += Math.pow(2, -(d - 1)) * mobilityMap[newY][newX];
-                            } else {
-                                break;
-                            }
-                        }
-                    }
-                    if (board[i][j] == WHITE_QUEEN) {
-                        whiteScore += w * Math.pow(1.2, -queenEval) / 45.0;
-                    } else {
-                        blackScore += w * Math.pow(1.2, -queenEval) / 45.0;
+        for (int queenType = WHITE_QUEEN; queenType <= BLACK_QUEEN; queenType++) {
+            int count = board.getQueens(queenType, queens);
+            for (int i = 0; i < count; i++) {
+                double queenEval = 0.0;
+                for (int step : STEPS) {
+                    int d = 1;
+                    for (int target = CELL[queens[i]] + step; blocked[target] == 0; target += step, d++) {
+                        queenEval += POW2[d - 1] * emptyNeighbours(blocked, target);
                     }
                 }
+                if (queenType == WHITE_QUEEN) {
+                    whiteScore += w * Math.pow(1.2, -queenEval) / 45.0;
+                } else {
+                    blackScore += w * Math.pow(1.2, -queenEval) / 45.0;
+                }
             }
         }
         return blackScore - whiteScore;
     }
-}
\ No newline at end of file
+
+    // the mobility map entry of a cell: how many of the 8 surrounding squares are empty
+    private static int emptyNeighbours(int[] blocked, int cell) {
+        int count = 0;
+        for (int step : STEPS) {
+            count += 1 - blocked[cell + step];
+        }
+        return count;
+    }
+}
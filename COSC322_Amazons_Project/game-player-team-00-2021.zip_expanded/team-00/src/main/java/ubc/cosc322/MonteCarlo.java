@@ -1,10 +1,87 @@
 package ubc.cosc322;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntUnaryOperator;
+
 public class MonteCarlo {
+    // how the search uses threads: one tree on the calling thread, one independent tree per
+    // worker thread whose root statistics are merged at the end (root parallelism), or all
+    // worker threads growing the same tree, kept apart by virtual loss (tree parallelism)
+    public enum SearchMode { SEQUENTIAL, ROOT_PARALLEL, TREE_PARALLEL }
+
     // Time allowed for search in millisecond, the root node of the tree, and our exploration parameter
     private long allowedTimeMs;
     public TreeNode root;
     private double explorationCoefficient;
+
+    // parallel search settings: mode, worker count, seed of the per-worker generators and an optional
+    // per-worker iteration budget (0 = search until the time runs out)
+    private SearchMode searchMode = SearchMode.SEQUENTIAL;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private long seed = System.nanoTime();
+    private int maxIterations = 0;
+    private Random[] randoms;   // one generator per worker, worker i seeded with seed + i
+
+    // transposition tables, one per tree so root-parallel workers don't share nodes (null = plain trees)
+    private int transpositionEntries = 0;
+    private TranspositionTable[] tables;
+
+    // optional fixed-budget node store, searched instead of the TreeNode tree (null = TreeNode tree)
+    private NodeStore store;
+
+    // evaluate leaves with BitboardEvaluator instead of HeuristicEvaluator
+    private boolean bitboardEvaluation = false;
+    private EvaluationCache evaluationCache;  // null = evaluate every leaf
+
+    // best-first expansion with progressive widening and PUCT selection, see setMoveOrdering
+    private static final double WIDENING_MIN = 2;
+    private static final double WIDENING_SCALE = 1.5;
+    private double puctCoefficient = 0;  // 0 = random expansion and UCB1
+
+    // random moves played from a leaf before it is evaluated (0 = evaluate the leaf itself), one playout
+    // engine per search thread
+    private int playoutDepth = 0;
+    private final ThreadLocal<PlayoutEngine> playoutEngines = ThreadLocal.withInitial(PlayoutEngine::new);
+
+    // leaves gathered per evaluation by the batched search (1 = one leaf at a time)
+    private int batchSize = 1;
+
+    // optional adaptive time budget, without one every move gets allowedTimeMs. The budget, start time
+    // and root visits of the move being searched are kept for the early stop check, which runs every
+    // EARLY_STOP_INTERVAL iterations and ends the search of every worker through stopEarly.
+    private static final int EARLY_STOP_INTERVAL = 256;
+    private TimeManager timeManager;
+    private long moveBudgetMs;
+    private long moveStartMs;
+    private int moveStartVisits;
+    private volatile boolean stopEarly;
+    // the trees of a root-parallel move while it is searched, so the check can merge their root statistics
+    private volatile TreeNode[] parallelTrees;
+
+    // solves the game exactly once the regions are separated, instead of searching (null = always search)
+    private EndgameSolver endgameSolver;
+
+    // precomputed opening moves, played instead of searching (null = always search)
+    private OpeningBook openingBook;
+
+    // per-move search metrics, reported after every move (null = off); pondering isn't counted
+    private SearchMetrics metrics;
+
+    // background search during the opponent's turn, stopped through the flag every search loop checks
+    private volatile boolean stopRequested;
+    private Thread ponderThread;
+    private boolean ponderingEnabled = false;  // whether the caller should ponder, see setPonderingEnabled
     
     // initializes our MCTS engine with a starting state, search time, and exploration factor
     public MonteCarlo(TreeNode root, long allowedTimeMs, double explorationCoefficient) {
@@ -13,103 +90,1041 @@ public class MonteCarlo {
         this.explorationCoefficient = explorationCoefficient;
     }
     
+    public void setSearchMode(SearchMode searchMode) {
+        this.searchMode = searchMode;
+        this.tables = null;
+    }
+
+    // branch over queen moves and arrow shots as two tree levels (see TreeNode) instead of complete moves.
+    // The root is rebuilt, so this is set before searching.
+    public void setSplitPly(boolean splitPly) {
+        stopPondering();
+        root = new TreeNode(root.boardState, root.color, splitPly);
+        tables = null;
+    }
+
+    // number of worker threads for the parallel modes, defaults to the available processors
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+        this.randoms = null;
+        this.tables = null;
+    }
+
+    // seed the workers' random generators; together with an iteration budget this makes the chosen move reproducible
+    public void setSeed(long seed) {
+        this.seed = seed;
+        this.randoms = null;
+    }
+
+    // stop every worker after this many iterations even if time is left (0 = no limit)
+    public void setMaxIterations(int maxIterations) {
+        this.maxIterations = maxIterations;
+    }
+
+    // share the node of a position reached through different move orders, using transposition tables
+    // of this many entries in total (0 = plain tree, the default). The root-parallel search gives each
+    // worker's tree its share, entries / threads; the other modes search one tree with one table.
+    public void setTranspositionTableSize(int entries) {
+        this.transpositionEntries = entries;
+        this.tables = null;
+    }
+
+    // use the bit-parallel evaluator. It is not a drop-in replacement for HeuristicEvaluator: the king
+    // metrics and mobility are the same, but its queen metrics use the true queen distances, where the
+    // scalar line walk overestimates some squares, so the two score many positions differently. They
+    // only agree where both find the same queen distances (see BitboardEvaluatorTest).
+    public void setBitboardEvaluation(boolean bitboardEvaluation) {
+        this.bitboardEvaluation = bitboardEvaluation;
+        if (evaluationCache != null) {
+            evaluationCache.clear();
+        }
+    }
+
+    // Expand moves best-first by MoveOrdering score, with progressive widening: a node only considers its
+    // top WIDENING_MIN + WIDENING_SCALE * sqrt(N) moves, more as it is visited. Children are then selected
+    // by PUCT with the move priors and this coefficient (0 = random expansion and UCB1, the default).
+    public void setMoveOrdering(double puctCoefficient) {
+        this.puctCoefficient = puctCoefficient;
+    }
+
+    // Hybrid search: score leaves by a random playout of this many moves (PlayoutEngine.TO_END for whole
+    // games) that ends in a heuristic evaluation, instead of evaluating the leaf. 0 = off, the default.
+    // Playouts aren't cached, so the evaluation cache doesn't apply.
+    public void setPlayoutDepth(int plies) {
+        this.playoutDepth = Math.max(0, plies);
+    }
+
+    // Gather this many leaves per step and evaluate them together with a BatchEvaluator (SIMD when the
+    // Vector API is available). Selection counts virtual loss so that one step's leaves differ. Only the
+    // TreeNode tree is batched, and playouts are still run one by one. 1 = off, the default.
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    // share out the game clock over the moves instead of a fixed time per move (null = fixed time)
+    public void setTimeManager(TimeManager timeManager) {
+        this.timeManager = timeManager;
+    }
+
+    // hand positions whose regions are separated and small enough over to an exact solver; nodeLimit
+    // bounds the solver's search per region, larger regions are left to MCTS (0 = always search)
+    public void setEndgameNodeLimit(int nodeLimit) {
+        this.endgameSolver = (nodeLimit > 0) ? new EndgameSolver(nodeLimit) : null;
+    }
+
+    // play the book move in positions the book has (see OpeningBook); null searches every move
+    public void setOpeningBook(OpeningBook openingBook) {
+        this.openingBook = openingBook;
+    }
+
+    // collect and print search metrics for every move (see SearchMetrics)
+    public void setMetricsEnabled(boolean enabled) {
+        this.metrics = enabled ? new SearchMetrics() : null;
+    }
+
+    // the metrics of the move being searched, or null
+    public SearchMetrics getMetrics() {
+        return metrics;
+    }
+
+    // remember this many leaf evaluations by position hash, for transpositions and re-created nodes (0 = off)
+    public void setEvaluationCacheSize(int entries) {
+        this.evaluationCache = (entries > 0) ? new EvaluationCache(entries) : null;
+    }
+
+    // the evaluation cache with its hit counters, or null
+    public EvaluationCache getEvaluationCache() {
+        return evaluationCache;
+    }
+
+    // search a NodeStore of at most this many nodes instead of the TreeNode tree (0 = TreeNode tree).
+    // Memory use stays flat however long the game, the store always branches split-ply and is
+    // searched on the calling thread whatever the search mode.
+    public void setNodeBudget(int nodes) {
+        setNodeBudget(nodes, false);
+    }
+
+    // the same, with offHeap keeping the nodes in direct memory outside the Java heap (see OffHeapNodeStore)
+    // for budgets too large for the heap
+    public void setNodeBudget(int nodes, boolean offHeap) {
+        stopPondering();
+        if (store != null) {
+            store.release();
+        }
+        if (nodes > 0) {
+            store = offHeap ? new OffHeapNodeStore(nodes) : new ArrayNodeStore(nodes);
+            store.reset(root.boardState, root.color);
+        } else {
+            store = null;
+        }
+    }
+
     // Run the Monte Carlo Tree Search and pick the best action from the current root
     public AmazonsAction MCTS() {
-        TreeNode.maxDepth = 0;
-        long startTime = System.currentTimeMillis();
-        int iterations = 0;
+        long start = System.currentTimeMillis();
+        AmazonsAction action = null;
+        // a book move is played through here as well, so the time manager is charged for the lookup
+        if (openingBook != null) {
+            stopPondering();
+            int entry = openingBook.findPlayable(root.boardState, root.color);
+            if (entry != -1) {
+                action = AmazonsAction.fromPacked(openingBook.getMove(entry));
+                if (metrics != null) {
+                    metrics.recordBookMove(openingBook.getVisits(entry), openingBook.getValue(entry));
+                }
+            }
+        }
+        if (action == null && endgameSolver != null) {
+            stopPondering();
+            action = endgameSolver.solve(root.boardState, root.color);
+            if (action != null && metrics != null) {
+                metrics.recordEndgame(endgameSolver.getOurMoves(), endgameSolver.getTheirMovesLower(),
+                                      endgameSolver.getTheirMovesUpper());
+            }
+        }
+        if (action == null) {
+            action = searchBestAction();
+        }
+        String report = null;
+        if (metrics != null) {
+            if (evaluationCache != null) {
+                // counted since the previous move, so lookups made while pondering are included
+                metrics.recordCacheHitRate(evaluationCache.getHitRate());
+            }
+            // walking the tree for its size takes time of its own, so it is done before the move is
+            // charged to the clock and counts as part of it
+            long size = treeSize();
+            report = metrics.report(System.currentTimeMillis() - start, size);
+            metrics.reset();
+        }
+        if (timeManager != null) {
+            timeManager.moveFinished(System.currentTimeMillis() - start);
+            System.out.println("time left: " + timeManager.getRemainingMs() + " ms");
+        }
+        if (report != null) {
+            System.out.println(report);
+        }
+        if (evaluationCache != null) {
+            evaluationCache.resetCounters();
+        }
+        return action;
+    }
+
+    // search in the configured mode until the time or iteration budget runs out, then pick the move
+    private AmazonsAction searchBestAction() {
+        stopPondering();
+        moveStartMs = System.currentTimeMillis();
+        moveBudgetMs = (timeManager != null) ? timeManager.allocate(root.boardState, root.color) : allowedTimeMs;
+        moveStartVisits = (store != null) ? store.getVisits(NodeStore.ROOT) : root.N;
+        stopEarly = false;
+        long deadline = moveStartMs + moveBudgetMs;
+        createRandoms();
+        createTables();
+        if (store != null) {
+            int iterations = searchStore(randoms[0], deadline, maxIterations);
+            System.out.println(iterations + " iterations were run, " + store.size() + " nodes stored");
+            return bestStoreMove();
+        }
+        if (root.getNumChildren() == 0 && !root.isTerminal()) {
+            // rootFromAction no longer expands a new root, so make sure there is a move even if the
+            // search gets no iteration in before the deadline
+            expandUnvisited(root, randoms[0], table(0));
+        }
+        if (searchMode == SearchMode.ROOT_PARALLEL && threads > 1) {
+            return rootParallelMCTS(deadline);
+        }
+
+        if (searchMode == SearchMode.TREE_PARALLEL && threads > 1) {
+            int iterations = runWorkers(worker -> search(root, randoms[worker], table(0), deadline, maxIterations, true));
+            System.out.println(iterations + " iterations were run on " + threads + " threads");
+        } else {
+            int iterations = search(root, randoms[0], table(0), deadline, maxIterations, false);
+            System.out.println(iterations + " iterations were run");
+        }
+        if (root.isProven()) {
+            // the root's proof is for the opponent, who moved into it
+            System.out.println("position proven " + ((root.proof == TreeNode.PROVEN_LOSS) ? "won" : "lost"));
+        }
         
-        // Run our  simulations until the allowed time has passed
-        while (System.currentTimeMillis() - startTime < allowedTimeMs) {
-            TreeNode leaf = traverse(root);
+        //  Pick the action that has the highest win rate among the root's children
+        int best = bestChildIndex(root);
+        if (best == -1) {
+            return null;
+        }
+        int move = root.getChildMove(best);
+        TreeNode queenNode = root.getChild(best);
+        if (queenNode.arrowPending) {
+            // split-ply tree: the root's children are queen moves, pick the arrow the same way
+            int bestArrow = bestChildIndex(queenNode);
+            if (bestArrow == -1) {
+                expandUnvisited(queenNode, randoms[0], null);
+                bestArrow = queenNode.getNumChildren() - 1;
+            }
+            move = queenNode.getChildMove(bestArrow);
+        }
+        return AmazonsAction.fromPacked(move);
+    }
+
+    // Whether the player should call startPondering after each of its moves. The engine itself never
+    // starts pondering; this only carries the setting from an engine spec to COSC322Test and Arena.
+    public void setPonderingEnabled(boolean ponderingEnabled) {
+        this.ponderingEnabled = ponderingEnabled;
+    }
+
+    public boolean isPonderingEnabled() {
+        return ponderingEnabled;
+    }
+
+    // Pondering: keep growing the current tree on a background thread (all workers in tree-parallel mode,
+    // otherwise just the main tree) until stopPondering, MCTS or the next rootFromAction. The statistics
+    // gathered stay in the tree, so the subtree of the opponent's actual move is reused with them.
+    public synchronized void startPondering() {
+        if (ponderThread != null) {
+            return;
+        }
+        createRandoms();
+        createTables();
+        stopRequested = false;
+        stopEarly = false;
+        final TreeNode ponderRoot = root;
+        ponderThread = new Thread(() -> {
+            int iterations;
+            if (store != null) {
+                iterations = searchStore(randoms[0], Long.MAX_VALUE, 0);
+            } else if (searchMode == SearchMode.TREE_PARALLEL && threads > 1) {
+                iterations = runWorkers(worker -> search(ponderRoot, randoms[worker], table(0), Long.MAX_VALUE, 0, true));
+            } else {
+                iterations = search(ponderRoot, randoms[0], table(0), Long.MAX_VALUE, 0, false);
+            }
+            System.out.println(iterations + " iterations were run while pondering");
+        }, "mcts-ponder");
+        ponderThread.setDaemon(true);
+        ponderThread.start();
+    }
+
+    // stop a running ponder search and wait for its threads to leave the tree
+    public synchronized void stopPondering() {
+        if (ponderThread == null) {
+            return;
+        }
+        stopRequested = true;
+        try {
+            ponderThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        ponderThread = null;
+        stopRequested = false;
+    }
+
+    // (re)create the per-worker generators after the seed or thread count changed
+    private void createRandoms() {
+        if (randoms == null) {
+            randoms = new Random[threads];
+            for (int i = 0; i < threads; i++) {
+                randoms[i] = new Random(seed + i);
+            }
+        }
+    }
+
+    // create the transposition tables after the size, search mode or thread count changed
+    private void createTables() {
+        if (tables == null && transpositionEntries > 0) {
+            int trees = (searchMode == SearchMode.ROOT_PARALLEL) ? threads : 1;
+            tables = new TranspositionTable[trees];
+            for (int i = 0; i < trees; i++) {
+                tables[i] = new TranspositionTable(transpositionEntries / trees);
+            }
+        }
+    }
+
+    // the transposition table of a worker's tree, or null without one
+    private TranspositionTable table(int worker) {
+        return (tables != null) ? tables[worker] : null;
+    }
+
+    // Run our simulations on one tree until the deadline has passed, the iteration budget is used up
+    // (0 = no budget) or a stop is requested.
+    // With virtualLoss the tree is shared with other threads: every node on the selected path has its
+    // visit counted on the way down, so until the result arrives it looks like a loss to the others.
+    // New positions are looked up in the table first when there is one (null for a plain tree).
+    private int search(TreeNode tree, Random random, TranspositionTable table, long deadline, int budget, boolean virtualLoss) {
+        if (batchSize > 1) {
+            return searchBatched(tree, random, table, deadline, budget);
+        }
+        SearchMetrics metrics = (deadline != Long.MAX_VALUE) ? this.metrics : null;
+        int iterations = 0;
+        List<TreeNode> path = new ArrayList<>();
+        while (!stopRequested && !stopEarly && !tree.isProven() && System.currentTimeMillis() < deadline
+                && (budget == 0 || iterations < budget)) {
+            long started = (metrics != null) ? System.nanoTime() : 0;
+            path.clear();
+            path.add(tree);
+            if (virtualLoss) {
+                tree.addVisit();
+            }
+            TreeNode leaf = traverse(tree, path, virtualLoss);
+            long selected = (metrics != null) ? System.nanoTime() : 0;
+            long expanded = selected;
             double result;
-            if (leaf.isTerminal()) {
-                result = 1;  // terminal node reached; assign the win value
+            boolean proven = leaf.updateProof();
+            if (proven) {
+                result = provenResult(leaf);  // a terminal node or one its children decide
             } else {
-                leaf = leaf.expandAtRandom();
-                result = heuristicRollout(leaf);
+                TreeNode child = expandUnvisited(leaf, random, table);
+                if (metrics != null) {
+                    expanded = System.nanoTime();
+                    if (child != null && child.N == 0) {
+                        metrics.addNodes(1);  // a node found in the table has been visited already
+                    }
+                }
+                if (child != null) {
+                    leaf = child;
+                    path.add(leaf);
+                    if (virtualLoss) {
+                        leaf.addVisit();
+                    }
+                } // else another thread took the last move, so the leaf itself is evaluated again
+                result = leafValue(leaf, random);
             }
+            long evaluated = (metrics != null) ? System.nanoTime() : 0;
             iterations++;
-            backpropagate(leaf, result);
+            backpropagate(path, result, !virtualLoss);
+            if (proven) {
+                propagateProof(path);
+            }
+            if (metrics != null) {
+                metrics.recordIteration(path.size() - 1, selected - started, expanded - selected,
+                        evaluated - expanded, System.nanoTime() - evaluated);
+            }
+            // only the worker on the main tree of a timed move checks, not the helper trees or a ponder
+            // search; with root parallelism it checks the statistics of every tree (see canStopEarlyMerged)
+            if (iterations % EARLY_STOP_INTERVAL == 0 && timeManager != null && tree == root
+                    && deadline != Long.MAX_VALUE && canStopEarly(tree)) {
+                stopEarly = true;
+            }
         }
-        System.out.println(iterations + " iterations were run");
-        
-        //  Pick the action that has the highest win rate among the root's children
-        AmazonsAction bestAction = null;
+        return iterations;
+    }
+
+    // The batched search loop: select and expand up to batchSize leaves, always with virtual loss, evaluate
+    // them in one batch, then backpropagate every result. Stops like search(), between batches.
+    private int searchBatched(TreeNode tree, Random random, TranspositionTable table, long deadline, int budget) {
+        SearchMetrics metrics = (deadline != Long.MAX_VALUE) ? this.metrics : null;
+        BatchEvaluator evaluator = new BatchEvaluator(batchSize);
+        List<List<TreeNode>> paths = new ArrayList<>();
+        for (int i = 0; i < batchSize; i++) {
+            paths.add(new ArrayList<>());
+        }
+        TreeNode[] leaves = new TreeNode[batchSize];
+        int[] slots = new int[batchSize];
+        double[] results = new double[batchSize];
+        boolean[] proven = new boolean[batchSize];
+        long[] selection = new long[batchSize], expansion = new long[batchSize];
+        int iterations = 0;
+        int nextCheck = EARLY_STOP_INTERVAL;
+        while (!stopRequested && !stopEarly && !tree.isProven() && System.currentTimeMillis() < deadline
+                && (budget == 0 || iterations < budget)) {
+            int gathered = 0;
+            while (gathered < batchSize && (budget == 0 || iterations + gathered < budget)) {
+                long started = (metrics != null) ? System.nanoTime() : 0;
+                List<TreeNode> path = paths.get(gathered);
+                path.clear();
+                path.add(tree);
+                tree.addVisit();
+                TreeNode leaf = traverse(tree, path, true);
+                long selected = (metrics != null) ? System.nanoTime() : 0;
+                proven[gathered] = leaf.updateProof();
+                if (!proven[gathered]) {
+                    TreeNode child = expandUnvisited(leaf, random, table);
+                    if (metrics != null && child != null && child.N == 0) {
+                        metrics.addNodes(1);
+                    }
+                    if (child != null) {
+                        leaf = child;
+                        path.add(leaf);
+                        leaf.addVisit();
+                    }
+                }
+                leaves[gathered] = leaf;
+                if (metrics != null) {
+                    selection[gathered] = selected - started;
+                    expansion[gathered] = System.nanoTime() - selected;
+                }
+                gathered++;
+            }
+            long evaluating = (metrics != null) ? System.nanoTime() : 0;
+            evaluateBatch(leaves, proven, gathered, evaluator, random, slots, results);
+            long evaluated = (metrics != null) ? System.nanoTime() : 0;
+            for (int i = 0; i < gathered; i++) {
+                backpropagate(paths.get(i), results[i], false);
+                if (proven[i]) {
+                    propagateProof(paths.get(i));
+                }
+            }
+            if (metrics != null) {
+                // the batch's evaluation and backpropagation time is shared out over its leaves
+                long evaluation = (evaluated - evaluating) / gathered;
+                long backpropagation = (System.nanoTime() - evaluated) / gathered;
+                for (int i = 0; i < gathered; i++) {
+                    metrics.recordIteration(paths.get(i).size() - 1, selection[i], expansion[i], evaluation, backpropagation);
+                }
+            }
+            iterations += gathered;
+            if (iterations >= nextCheck) {
+                nextCheck += EARLY_STOP_INTERVAL;
+                if (timeManager != null && tree == root && deadline != Long.MAX_VALUE && canStopEarly(tree)) {
+                    stopEarly = true;
+                }
+            }
+        }
+        return iterations;
+    }
+
+    // the value of every gathered leaf as leafValue gives it, the proven result for proven ones; cached
+    // scores are used as they are and the rest of the heuristic evaluations run as one batch
+    private void evaluateBatch(TreeNode[] leaves, boolean[] proven, int count, BatchEvaluator evaluator,
+                               Random random, int[] slots, double[] results) {
+        evaluator.clear();
+        for (int i = 0; i < count; i++) {
+            slots[i] = -1;
+            TreeNode leaf = leaves[i];
+            if (proven[i]) {
+                results[i] = provenResult(leaf);
+                continue;
+            }
+            if (playoutDepth > 0 || bitboardEvaluation) {
+                results[i] = leafValue(leaf, random);  // no batched version of these
+                continue;
+            }
+            double score = (evaluationCache != null) ? evaluationCache.get(leaf.boardState.getHash(leaf.getColor())) : Double.NaN;
+            if (Double.isNaN(score)) {
+                slots[i] = evaluator.add(leaf.boardState, leaf.getColor());
+            } else {
+                results[i] = rolloutValue(leaf, score);
+            }
+        }
+        if (evaluator.size() == 0) {
+            return;
+        }
+        evaluator.evaluate();
+        for (int i = 0; i < count; i++) {
+            if (slots[i] >= 0) {
+                double score = evaluator.getScore(slots[i]);
+                if (evaluationCache != null) {
+                    evaluationCache.put(leaves[i].boardState.getHash(leaves[i].getColor()), score);
+                }
+                results[i] = rolloutValue(leaves[i], score);
+            }
+        }
+    }
+
+    // whether the most visited root move has a lead the rest of the budget can't close (see TimeManager)
+    private boolean canStopEarly(TreeNode tree) {
+        TreeNode[] trees = parallelTrees;
+        if (trees != null) {
+            return canStopEarlyMerged(trees);
+        }
+        int best = -1, bestVisits = 0, secondVisits = 0;
+        for (int i = 0; i < tree.getNumChildren(); i++) {
+            int visits = tree.getChild(i).N;
+            if (visits > bestVisits) {
+                secondVisits = bestVisits;
+                bestVisits = visits;
+                best = i;
+            } else if (visits > secondVisits) {
+                secondVisits = visits;
+            }
+        }
+        return best != -1 && timeManager.canStopEarly(bestVisits, secondVisits, best == bestChildIndex(tree),
+                tree.N - moveStartVisits, System.currentTimeMillis() - moveStartMs, moveBudgetMs);
+    }
+
+    // canStopEarly for root parallelism: the visits of every tree summed per move, and the move
+    // bestMergedMove would pick, since that is the one played and not the choice of the main tree
+    private boolean canStopEarlyMerged(TreeNode[] trees) {
+        Map<Integer, int[]> visits = new LinkedHashMap<>();
+        int searched = -moveStartVisits;  // the helper trees start from nothing
+        for (TreeNode tree : trees) {
+            searched += tree.N;
+            for (int i = 0; i < tree.getNumChildren(); i++) {
+                visits.computeIfAbsent(tree.getChildMove(i), k -> new int[1])[0] += tree.getChild(i).N;
+            }
+        }
+        int best = -1, bestVisits = 0, secondVisits = 0;
+        for (Map.Entry<Integer, int[]> entry : visits.entrySet()) {
+            int moveVisits = entry.getValue()[0];
+            if (moveVisits > bestVisits) {
+                secondVisits = bestVisits;
+                bestVisits = moveVisits;
+                best = entry.getKey();
+            } else if (moveVisits > secondVisits) {
+                secondVisits = moveVisits;
+            }
+        }
+        return best != -1 && timeManager.canStopEarly(bestVisits, secondVisits, best == bestMergedMove(Arrays.asList(trees)),
+                searched, System.currentTimeMillis() - moveStartMs, moveBudgetMs);
+    }
+
+    // The search loop over the node store: the same selection, random expansion, heuristic evaluation and
+    // backpropagation as search(), on node ids, replaying the moves onto a copy of the root board on the
+    // way down. Nodes at odd depth have had their queen moved and branch over the arrow shots.
+    private int searchStore(Random random, long deadline, int budget) {
+        int[] path = new int[2 * BitBoard.SQUARES + 1];  // two levels per complete move
+        int[] moves = new int[AmazonsActionFactory.MAX_MOVES];
+        SearchMetrics metrics = (deadline != Long.MAX_VALUE) ? this.metrics : null;
+        int iterations = 0;
+        while (!stopRequested && !stopEarly && System.currentTimeMillis() < deadline
+                && (budget == 0 || iterations < budget)) {
+            long started = (metrics != null) ? System.nanoTime() : 0;
+            long expansion = 0;  // time spent expanding during the descent
+            if (store.isNearlyFull()) {
+                store.recycle();
+            }
+            BitBoard board = new BitBoard(store.rootBoard);
+            int color = store.rootColor;  // the player to move, at odd depth the one still to shoot
+            int node = NodeStore.ROOT;
+            int depth = 0;
+            path[0] = node;
+            boolean terminal = false;
+            while (true) {
+                boolean arrowPending = (depth & 1) == 1;
+                if (store.getFirstChild(node) == NodeStore.NONE) {
+                    long expanding = (metrics != null) ? System.nanoTime() : 0;
+                    int count = arrowPending
+                            ? AmazonsActionFactory.generateArrowShots(board, store.getMove(node), moves)
+                            : AmazonsActionFactory.generateQueenMoves(board, color, moves);
+                    store.expand(node, moves, count);
+                    if (metrics != null) {
+                        expansion += System.nanoTime() - expanding;
+                        metrics.addNodes(count);
+                    }
+                }
+                if (store.getNumChildren(node) == 0) {
+                    terminal = true;
+                    break;
+                }
+                // like traverse(): descend by UCB through fully expanded nodes, stop at the first new child
+                boolean expanding = store.getNumExpanded(node) < store.getNumChildren(node);
+                int child = expanding ? store.expandAtRandom(node, random) : bestStoreUCB(node);
+                int childMove = store.getMove(child);
+                if (arrowPending) {
+                    board.placeArrow(AmazonsAction.getArrowDest(childMove));
+                    color = (color == 2) ? 1 : 2;
+                } else {
+                    board.moveQueen(AmazonsAction.getQueenSrc(childMove), AmazonsAction.getQueenDest(childMove));
+                }
+                node = child;
+                path[++depth] = node;
+                if (expanding) {
+                    break;
+                }
+            }
+            long selected = (metrics != null) ? System.nanoTime() : 0;
+            double result;
+            if (terminal) {
+                result = 1;  // the player to move is stuck, a win for the one who moved into the node
+            } else if (playoutDepth > 0) {
+                // at odd depth the queen has moved and the same player still shoots the arrow
+                boolean arrowPending = (depth & 1) == 1;
+                result = playoutEngines.get().playout(board, color, arrowPending ? store.getMove(node) : -1, playoutDepth, random);
+                result = arrowPending ? result : (1 - result);
+            } else {
+                result = AmazonsUtility.sigmoid(evaluate(board, color));
+                int mover = ((depth & 1) == 1) ? color : (color == 2) ? 1 : 2;
+                result = (mover == 1) ? result : (1 - result);
+            }
+            long evaluated = (metrics != null) ? System.nanoTime() : 0;
+            for (int i = depth; i >= 0; i--) {
+                store.update(path[i], result);
+                // flip for the parent unless it is a queen-move node, whose arrow the same player shoots
+                if (i > 0 && ((i - 1) & 1) == 0) {
+                    result = 1 - result;
+                }
+            }
+            if (metrics != null) {
+                metrics.recordIteration(depth, selected - started - expansion, expansion,
+                        evaluated - selected, System.nanoTime() - evaluated);
+            }
+            iterations++;
+            if (iterations % EARLY_STOP_INTERVAL == 0 && timeManager != null && deadline != Long.MAX_VALUE
+                    && canStopStoreEarly()) {
+                stopEarly = true;
+            }
+        }
+        return iterations;
+    }
+
+    // canStopEarly for the root of the node store
+    private boolean canStopStoreEarly() {
+        int best = NodeStore.NONE, bestVisits = 0, secondVisits = 0;
+        int first = store.getFirstChild(NodeStore.ROOT);
+        for (int child = first; child < first + store.getNumExpanded(NodeStore.ROOT); child++) {
+            int visits = store.getVisits(child);
+            if (visits > bestVisits) {
+                secondVisits = bestVisits;
+                bestVisits = visits;
+                best = child;
+            } else if (visits > secondVisits) {
+                secondVisits = visits;
+            }
+        }
+        return best != NodeStore.NONE && timeManager.canStopEarly(bestVisits, secondVisits, best == bestStoreChild(NodeStore.ROOT),
+                store.getVisits(NodeStore.ROOT) - moveStartVisits, System.currentTimeMillis() - moveStartMs, moveBudgetMs);
+    }
+
+    // the visited child of a stored node with the highest UCB score
+    private int bestStoreUCB(int node) {
+        double explorationTerm = explorationCoefficient * Math.sqrt(AmazonsUtility.log(store.getVisits(node)));
+        int first = store.getFirstChild(node);
+        int bestChild = first;
+        double maxUCB = -1;
+        for (int child = first; child < first + store.getNumExpanded(node); child++) {
+            int visits = store.getVisits(child);
+            double currentUCB = store.getValue(child) / visits + explorationTerm * AmazonsUtility.inverseSqrt(visits);
+            if (currentUCB > maxUCB) {
+                maxUCB = currentUCB;
+                bestChild = child;
+            }
+        }
+        return bestChild;
+    }
+
+    // the visited child of a stored node with the highest win rate, or NONE
+    private int bestStoreChild(int node) {
+        int bestChild = NodeStore.NONE;
+        double bestWinrate = -10000;
+        int first = store.getFirstChild(node);
+        for (int child = first; child < first + store.getNumExpanded(node); child++) {
+            double winrate = store.getValue(child) / store.getVisits(child);
+            if (winrate > bestWinrate) {
+                bestWinrate = winrate;
+                bestChild = child;
+            }
+        }
+        return bestChild;
+    }
+
+    // pick the queen move, then the arrow, with the highest win rate from the store
+    private AmazonsAction bestStoreMove() {
+        int queenNode = bestStoreChild(NodeStore.ROOT);
+        if (queenNode == NodeStore.NONE) {
+            return null;
+        }
+        int arrowNode = bestStoreChild(queenNode);
+        if (arrowNode != NodeStore.NONE) {
+            return AmazonsAction.fromPacked(store.getMove(arrowNode));
+        }
+        // the queen move was only evaluated once, so no arrow has been tried: shoot a random one
+        int queenMove = store.getMove(queenNode);
+        BitBoard board = new BitBoard(store.rootBoard);
+        board.moveQueen(AmazonsAction.getQueenSrc(queenMove), AmazonsAction.getQueenDest(queenMove));
+        int[] arrows = new int[NodeStore.MAX_BLOCK];
+        int count = AmazonsActionFactory.generateArrowShots(board, queenMove, arrows);
+        return AmazonsAction.fromPacked(arrows[randoms[0].nextInt(count)]);
+    }
+
+    // Run work(i) for every worker i, worker 0 on the calling thread, and return the summed iterations
+    private int runWorkers(IntUnaryOperator work) {
+        int[] iterations = new int[threads];
+        Thread[] workers = new Thread[threads];
+        for (int i = 1; i < threads; i++) {
+            final int worker = i;
+            workers[i] = new Thread(() -> iterations[worker] = work.applyAsInt(worker), "mcts-worker-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+        iterations[0] = work.applyAsInt(0);
+        int totalIterations = iterations[0];
+        for (int i = 1; i < threads; i++) {
+            try {
+                workers[i].join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            totalIterations += iterations[i];
+        }
+        return totalIterations;
+    }
+
+    // Root parallelism: every worker grows its own tree from the root position with its own generator.
+    // Worker 0 searches the main tree, so that is the one kept for reuse after the move; the other trees
+    // only contribute their root statistics, which are summed per move before the best one is picked.
+    private AmazonsAction rootParallelMCTS(long deadline) {
+        TreeNode[] trees = new TreeNode[threads];
+        trees[0] = root;
+        for (int i = 1; i < threads; i++) {
+            trees[i] = new TreeNode(root.boardState, root.color, root.splitPly);
+            if (tables != null) {
+                tables[i].clear();  // the helper trees are rebuilt every move
+            }
+        }
+        parallelTrees = trees;
+        int iterations;
+        try {
+            iterations = runWorkers(worker -> search(trees[worker], randoms[worker], table(worker), deadline, maxIterations, false));
+        } finally {
+            parallelTrees = null;
+        }
+        System.out.println(iterations + " iterations were run on " + threads + " threads");
+
+        List<TreeNode> parents = new ArrayList<>();
+        for (TreeNode tree : trees) {
+            parents.add(tree);
+        }
+        int bestMove = bestMergedMove(parents);
+        if (bestMove != -1 && root.splitPly) {
+            // the merged best queen move, then the arrow merged over every tree that tried it
+            List<TreeNode> queenNodes = new ArrayList<>();
+            for (TreeNode tree : trees) {
+                for (int i = 0; i < tree.getNumChildren(); i++) {
+                    if (tree.getChildMove(i) == bestMove) {
+                        queenNodes.add(tree.getChild(i));
+                    }
+                }
+            }
+            bestMove = bestMergedMove(queenNodes);
+            if (bestMove == -1) {
+                TreeNode queenNode = queenNodes.get(0);
+                expandUnvisited(queenNode, randoms[0], null);
+                bestMove = queenNode.getChildMove(queenNode.getNumChildren() - 1);
+            }
+        }
+        return (bestMove != -1) ? AmazonsAction.fromPacked(bestMove) : null;
+    }
+
+    // Sum N and Q of the children of all the given nodes per packed move and return the move with the
+    // highest combined win rate (-1 if there are no children). Moves are compared in the order the
+    // trees list them, so equal seeds and budgets give the same choice.
+    private int bestMergedMove(List<TreeNode> parents) {
+        Map<Integer, double[]> stats = new LinkedHashMap<>();
+        for (TreeNode parent : parents) {
+            for (int i = 0; i < parent.getNumChildren(); i++) {
+                TreeNode child = parent.getChild(i);
+                double[] childStats = stats.computeIfAbsent(parent.getChildMove(i), k -> new double[3]);
+                childStats[0] += child.N;
+                childStats[1] += child.getQ();
+                if (child.isProven()) {
+                    childStats[2] = child.proof;  // a proof holds in every tree
+                }
+            }
+        }
+        int bestMove = -1;
+        double bestWinrate = -10000;
+        for (Map.Entry<Integer, double[]> entry : stats.entrySet()) {
+            double[] s = entry.getValue();
+            double winrate = (s[2] != TreeNode.UNPROVEN) ? provenWinrate((byte) s[2]) : (s[0] != 0) ? s[1] / s[0] : 0;
+            if (winrate > bestWinrate) {
+                bestWinrate = winrate;
+                bestMove = entry.getKey();
+            }
+        }
+        return bestMove;
+    }
+
+    // a proven win beats every win rate and a proven loss is only played when nothing else is left
+    private static double provenWinrate(byte proof) {
+        return (proof == TreeNode.PROVEN_WIN) ? 2 : -1;
+    }
+
+    // index of the child with the highest win rate, or -1 if the node has no children
+    private int bestChildIndex(TreeNode node) {
+        int bestChild = -1;
         double bestWinrate = -10000;
-        for (TreeNode child : root.children) {
-            double winrate = (child.N != 0) ? child.Q / child.N : 0;
+        for (int i = 0; i < node.getNumChildren(); i++) {
+            TreeNode child = node.getChild(i);
+            double winrate = child.isProven() ? provenWinrate(child.proof) : (child.N != 0) ? child.getQ() / child.N : 0;
             if (winrate > bestWinrate) {
                 bestWinrate = winrate;
-                bestAction = child.action;
+                bestChild = i;
             }
         }
-        return bestAction;
+        return bestChild;
     }
     
-    // traverse the tree by always selecting the child with the highest UCB until a leaf is reached
-    public TreeNode traverse(TreeNode node) {
-        if (!node.hasUnexpandedChildren() && node.hasExpandedChildren()) {
+    // traverse the tree by always selecting the child with the highest UCB until a leaf is reached,
+    // appending every node selected below the start to path. Proven children are never selected.
+    public TreeNode traverse(TreeNode node, List<TreeNode> path) {
+        return traverse(node, path, false);
+    }
+
+    // same, optionally counting a visit (virtual loss) on every child selected along the way. A loop rather
+    // than recursion, so the depth of the tree doesn't matter; the parent's share of the UCB / PUCT
+    // exploration term is worked out once per level instead of for every child.
+    private TreeNode traverse(TreeNode node, List<TreeNode> path, boolean virtualLoss) {
+        while (!canExpand(node) && node.hasExpandedChildren()) {
+            boolean puct = puctCoefficient > 0;
+            double explorationTerm = puct ? puctCoefficient * AmazonsUtility.sqrt(node.N)
+                                          : explorationCoefficient * Math.sqrt(AmazonsUtility.log(node.N));
             double maxUCB = -1;  //   UCB scores are non-negative
             TreeNode bestChild = null;
-            for (TreeNode child : node.children) {
-                double currentUCB = child.getUCB(explorationCoefficient);
+            int count = node.getNumChildren();
+            for (int i = 0; i < count; i++) {
+                TreeNode child = node.getChild(i);
+                if (child.isProven()) {
+                    if (child.proof == TreeNode.PROVEN_WIN) {
+                        return node;  // a winning move decides the node, which the search proves next
+                    }
+                    continue;  // a lost move isn't worth another iteration
+                }
+                double currentUCB = puct ? child.getPUCTFromTerm(explorationTerm, node.getChildPrior(i))
+                                         : child.getUCBFromTerm(explorationTerm);
                 if (currentUCB > maxUCB) {
                     maxUCB = currentUCB;
                     bestChild = child;
                 }
             }
-            return traverse(bestChild);
+            if (bestChild == null) {
+                return node;  // every child lost: expand another move, or the node is proven lost
+            }
+            if (virtualLoss) {
+                bestChild.addVisit();
+            }
+            path.add(bestChild);
+            node = bestChild;
         }
         return node;
     }
     
-    // 		A full rollout using random expansions until a terminal state is reached
+    // whether selection stops at the node to expand another move: whenever it has moves left, or with
+    // progressive widening only while it has fewer children than its visits allow
+    private boolean canExpand(TreeNode node) {
+        if (!node.hasUnexpandedChildren()) {
+            return false;
+        }
+        return puctCoefficient == 0 || node.getNumChildren() < WIDENING_MIN + WIDENING_SCALE * AmazonsUtility.sqrt(node.N);
+    }
+
+    // add a child for one of the moves the node hasn't expanded yet: the best ordered one, or a random one
+    private TreeNode expandUnvisited(TreeNode node, Random random, TranspositionTable table) {
+        return (puctCoefficient > 0) ? node.expandBest(table) : node.expandAtRandom(random, table);
+    }
+
+    // A full random playout to the end of the game on a PlayoutEngine
     //  0 if the starting player's color loses, 1 otherwise
     public int rollout(TreeNode start) {
-        TreeNode currentNode = new TreeNode(start); // copy of the starting node
-        while (true) {
-            if (currentNode.isTerminal()) {
-                return (currentNode.getColor() == start.getColor()) ? 0 : 1;
-            }
-            currentNode = currentNode.expandAtRandom();
+        int queenMove = start.arrowPending ? start.move : -1;
+        return (int) playoutEngines.get().playout(start.boardState, start.color, queenMove, PlayoutEngine.TO_END, ThreadLocalRandom.current());
+    }
+
+    // the value of a new leaf for the player who moved into it: its heuristic rollout value, or with
+    // playouts on, the result of a playout from it
+    private double leafValue(TreeNode leaf, Random random) {
+        if (playoutDepth == 0) {
+            return heuristicRollout(leaf);
         }
+        double win = playoutEngines.get().playout(leaf.boardState, leaf.color, leaf.arrowPending ? leaf.move : -1, playoutDepth, random);
+        // the playout counts for the player to move, who is the mover only while an arrow is pending
+        return leaf.arrowPending ? win : 1 - win;
     }
     
     // instead of a full rollout use a heuristic evaluation and a sigmoid to get a rollout value
     public double heuristicRollout(TreeNode node) {
-        double heuristicResult = HeuristicEvaluator.getHeuristicEval(node.boardState, node.getColor());
+        return rolloutValue(node, evaluate(node.boardState, node.getColor()));
+    }
+
+    // the heuristic score of the node's position squashed by the sigmoid
+    private static double rolloutValue(TreeNode node, double heuristicResult) {
         double result = AmazonsUtility.sigmoid(heuristicResult);
-        // Flip the result depending on the player's color.
-        return (node.getColor() == 1) ? (1 - result) : result;
+        // Flip the result so it counts for the player who moved into the node.
+        return (node.getMover() == 1) ? result : (1 - result);
     }
     
-    // Propagate the simulation result up the tree, updating visit counts and cumulative scores
-    public void backpropagate(TreeNode node, double result) {
-        node.N++;
-        node.Q += result;
-        if (node.parent != null) {
-            backpropagate(node.parent, 1 - result);
+    // heuristic score of a position, positive when it favours white, with the selected evaluator
+    private double evaluate(BitBoard board, int playerTurn) {
+        long key = board.getHash(playerTurn);
+        double score = (evaluationCache != null) ? evaluationCache.get(key) : Double.NaN;
+        if (Double.isNaN(score)) {
+            score = bitboardEvaluation ? BitboardEvaluator.getHeuristicEval(board, playerTurn)
+                                       : HeuristicEvaluator.getHeuristicEval(board, playerTurn);
+            if (evaluationCache != null) {
+                evaluationCache.put(key, score);
+            }
+        }
+        return score;
+    }
+
+    // the result of a proven node for the player who moved into it
+    private static double provenResult(TreeNode node) {
+        return (node.proof == TreeNode.PROVEN_WIN) ? 1 : 0;
+    }
+
+    // MCTS-Solver: after the last node of the path was proven, settle its ancestors that this decides,
+    // up to the first one that is still open
+    private void propagateProof(List<TreeNode> path) {
+        for (int i = path.size() - 2; i >= 0; i--) {
+            if (!path.get(i).updateProof()) {
+                return;
+            }
+        }
+    }
+
+    // Propagate the simulation result back up the selected path, updating visit counts and cumulative scores.
+    // The path is followed rather than parent pointers, as a shared node can be reached from several parents.
+    public void backpropagate(List<TreeNode> path, double result) {
+        backpropagate(path, result, true);
+    }
+
+    // same, optionally leaving the visits alone for tree-parallel search where they were counted on the way down
+    private void backpropagate(List<TreeNode> path, double result, boolean countVisits) {
+        for (int i = path.size() - 1; i >= 0; i--) {
+            TreeNode node = path.get(i);
+            if (countVisits) {
+                node.addVisit();
+            }
+            node.addReward(result);
+            // flip for the parent, except above a split-ply queen-move node: the same player shoots the arrow
+            if (i > 0 && !path.get(i - 1).arrowPending) {
+                result = 1 - result;
+            }
         }
     }
     
-    // update the root of the tree based on the action taken If no matching child is found, reconstruct the state
+    // update the root of the tree based on the action taken: the child of the move keeps its subtree, otherwise
+    // only the new position is built. Nothing else is expanded, so this is cheap on the move clock.
     public void rootFromAction(AmazonsAction a) {
-        this.root.expand();
-        boolean found = false;
-        for (TreeNode child : root.children) {
-            if (child.action.isEqual(a)) {
-                root = child;
-                root.parent = null;
-                found = true;
-                break;
-            }
-        }
-        if (!found) {
-            // In the case of an illegal move adjust the state manually
+        stopPondering();
+        int move = a.toPacked();
+        int queenMove = AmazonsAction.pack(AmazonsAction.getQueenSrc(move), AmazonsAction.getQueenDest(move), AmazonsAction.NO_ARROW);
+        if (store != null) {
+            // root only tracks the position, the store keeps the subtree of the move if it has one
             int newColor = (root.color == 2) ? 1 : 2;
-            int[][][] postCheatState = AmazonsAction.applyAction(a, root.boardState);
-            root = new TreeNode(postCheatState, newColor);
+            root = new TreeNode(AmazonsAction.applyAction(a, root.boardState), newColor, root.splitPly);
+            int queenNode = store.findChild(NodeStore.ROOT, queenMove);
+            int next = (queenNode != NodeStore.NONE) ? store.findChild(queenNode, move) : NodeStore.NONE;
+            int previousVisits = store.getVisits(NodeStore.ROOT);
+            if (next != NodeStore.NONE) {
+                store.reroot(next, root.boardState, newColor);
+            } else {
+                store.reset(root.boardState, newColor);
+            }
+            if (metrics != null) {
+                metrics.recordReuse(previousVisits, store.getVisits(NodeStore.ROOT));
+            }
+            return;
+        }
+        TreeNode next;
+        if (root.splitPly) {
+            // two levels: the queen move first, then the arrow shot below it
+            TreeNode queenNode = findChild(root, queenMove);
+            next = (queenNode != null) ? findChild(queenNode, move) : null;
+        } else {
+            next = findChild(root, move);
+        }
+        int previousVisits = root.N;
+        if (next == null) {
+            // a move the search never tried: only its position is built, or found in the table when the
+            // search reached it through another move order; an illegal move is applied all the same
+            int newColor = (root.color == 2) ? 1 : 2;
+            BitBoard postCheatState = AmazonsAction.applyAction(a, root.boardState);
+            next = (tables != null) ? tables[0].get(postCheatState, newColor) : null;
+            if (next == null) {
+                next = new TreeNode(postCheatState, newColor, root.splitPly);
+            }
+        }
+        if (metrics != null) {
+            metrics.recordReuse(previousVisits, next.N);
+        }
+        // the old root and the siblings of the move are unreachable from here on
+        root = next;
+        if (tables != null) {
+            // positions that can't follow the new root only keep the old tree alive, and the helper
+            // trees of the root-parallel search are rebuilt every move anyway
+            tables[0].retainDescendantsOf(root.boardState);
+            for (int i = 1; i < tables.length; i++) {
+                tables[i].clear();
+            }
+        }
+    }
+
+    // number of nodes in the current tree, each shared node counted once
+    private long treeSize() {
+        if (store != null) {
+            return store.size();
+        }
+        Set<TreeNode> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<TreeNode> stack = new ArrayDeque<>();
+        seen.add(root);
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            TreeNode node = stack.pop();
+            for (int i = 0; i < node.getNumChildren(); i++) {
+                if (seen.add(node.getChild(i))) {
+                    stack.push(node.getChild(i));
+                }
+            }
+        }
+        return seen.size();
+    }
+
+    // the already searched child reached by the packed move, or null if the search never expanded it;
+    // the node's other moves are not expanded just to look
+    private TreeNode findChild(TreeNode node, int move) {
+        for (int i = 0; i < node.getNumChildren(); i++) {
+            if (node.getChildMove(i) == move) {
+                return node.getChild(i);
+            }
         }
+        return null;
     }
 }
\ No newline at end of file
@@ -0,0 +1,67 @@
+package ubc.cosc322;
+
+import java.util.Arrays;
+
+// Cheap move-ordering scores for best-first expansion, from the mobility map (the empty squares around
+// a square, see BitBoard.countEmptyNeighbours). A queen move scores the mobility it gains: the empty
+// neighbours of the destination minus those of the square it leaves. An arrow scores the opponent
+// queens next to it minus our own, as that is mobility taken away or given up.
+// The scores are turned into priors with a softmax for PUCT selection.
+public class MoveOrdering {
+    // softmax temperature in score points, higher spreads the priors more evenly
+    private static final double TEMPERATURE = 2.0;
+    // scores stay well inside +-SCORE_OFFSET, which keeps them positive for sorting
+    private static final int SCORE_OFFSET = 64;
+    private static final int MOVE_BITS = 24;
+
+    // per-thread sort buffer
+    private static final ThreadLocal<long[]> KEYS = ThreadLocal.withInitial(() -> new long[AmazonsActionFactory.MAX_MOVES]);
+
+    // Score of a packed move by the given colour. queenMoved: the queen already stands on its destination
+    // (a split-ply arrow node), so only the arrow is scored; a move without arrow only scores the queen.
+    public static int score(BitBoard board, int color, int move, boolean queenMoved) {
+        int src = AmazonsAction.getQueenSrc(move), dest = AmazonsAction.getQueenDest(move);
+        int arrow = AmazonsAction.getArrowDest(move);
+        int score = 0;
+        long ownLo = (color == BitBoard.WHITE_QUEEN) ? board.whiteLo : board.blackLo;
+        long ownHi = (color == BitBoard.WHITE_QUEEN) ? board.whiteHi : board.blackHi;
+        long otherLo = (color == BitBoard.WHITE_QUEEN) ? board.blackLo : board.whiteLo;
+        long otherHi = (color == BitBoard.WHITE_QUEEN) ? board.blackHi : board.whiteHi;
+        if (!queenMoved) {
+            // the square left behind is empty afterwards, so it counts for a destination next to it
+            boolean adjacent = ((BitBoard.NEIGHBOURS_LO[dest] & BitBoard.lowBit(src)) | (BitBoard.NEIGHBOURS_HI[dest] & BitBoard.highBit(src))) != 0;
+            score += board.countEmptyNeighbours(dest) + (adjacent ? 1 : 0) - board.countEmptyNeighbours(src);
+            ownLo ^= BitBoard.lowBit(src) | BitBoard.lowBit(dest);
+            ownHi ^= BitBoard.highBit(src) | BitBoard.highBit(dest);
+        }
+        if (arrow != AmazonsAction.NO_ARROW) {
+            score += Long.bitCount(BitBoard.NEIGHBOURS_LO[arrow] & otherLo) + Long.bitCount(BitBoard.NEIGHBOURS_HI[arrow] & otherHi);
+            score -= Long.bitCount(BitBoard.NEIGHBOURS_LO[arrow] & ownLo) + Long.bitCount(BitBoard.NEIGHBOURS_HI[arrow] & ownHi);
+        }
+        return score;
+    }
+
+    // Sort the first count moves by score, best last, and write their softmax priors into priors
+    public static void order(BitBoard board, int color, int[] moves, int count, boolean queenMoved, float[] priors) {
+        long[] keys = KEYS.get();
+        for (int i = 0; i < count; i++) {
+            int score = Math.max(-SCORE_OFFSET, Math.min(SCORE_OFFSET - 1, score(board, color, moves[i], queenMoved)));
+            keys[i] = ((long) (score + SCORE_OFFSET) << MOVE_BITS) | moves[i];
+        }
+        Arrays.sort(keys, 0, count);
+        if (count == 0) {
+            return;
+        }
+        int best = (int) (keys[count - 1] >>> MOVE_BITS);
+        double sum = 0;
+        for (int i = 0; i < count; i++) {
+            moves[i] = (int) (keys[i] & ((1L << MOVE_BITS) - 1));
+            double weight = Math.exp(((int) (keys[i] >>> MOVE_BITS) - best) / TEMPERATURE);
+            priors[i] = (float) weight;
+            sum += weight;
+        }
+        for (int i = 0; i < count; i++) {
+            priors[i] /= sum;
+        }
+    }
+}
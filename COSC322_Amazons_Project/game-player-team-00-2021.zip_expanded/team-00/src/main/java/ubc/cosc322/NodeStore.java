@@ -0,0 +1,223 @@
+package ubc.cosc322;
+
+import java.util.Random;
+
+// Search tree kept in preallocated primitive storage indexed by int node ids, as an alternative to TreeNode
+// objects. The tree is always split-ply: nodes at even depth are positions with a player to move and
+// branch over queen moves, nodes at odd depth branch over the arrow shots of their queen move. Boards
+// aren't stored, the search replays the moves from the root board on the way down.
+// When a node is expanded all of its children are allocated as one block of consecutive ids, after
+// every id already in use. The first numExpanded children of the block have been visited, the rest are
+// only a move so far. As blocks are only ever appended, a child always has a larger id than its parent,
+// which is what lets compact() slide the live nodes down in a single pass.
+// The node budget is fixed: once it is nearly used up, recycle() collapses the least-visited subtrees
+// (the nodes keep their statistics but lose their children) and compacts the storage.
+// Where the statistics live is up to the subclass: ArrayNodeStore keeps them in Java arrays, OffHeapNodeStore
+// in direct buffers outside the heap.
+public abstract class NodeStore {
+    public static final int ROOT = 0;
+    public static final int NONE = -1;      // firstChild of a node that hasn't been expanded
+    public static final int NO_MOVES = -2;  // firstChild of an expanded node without legal moves
+
+    // the largest block a single expansion can need: 4 queens with up to 35 moves each, or 35 arrow shots
+    public static final int MAX_BLOCK = 4 * 35;
+
+    final int capacity;
+    int size;                     // ids in use, the next block starts here
+
+    BitBoard rootBoard;
+    int rootColor;
+    private int recycles;
+
+    protected NodeStore(int capacity) {
+        this.capacity = Math.max(capacity, 8 * MAX_BLOCK);
+    }
+
+    // the per-node fields: visits, cumulative reward from the point of view of the player who moved into
+    // the node, the packed move into the node (queen-move nodes use AmazonsAction.NO_ARROW) and its block
+    public abstract int getVisits(int node);
+
+    public abstract double getValue(int node);
+
+    public abstract int getMove(int node);
+
+    public abstract int getFirstChild(int node);
+
+    public abstract int getNumChildren(int node);
+
+    public abstract int getNumExpanded(int node);
+
+    // count one visit with the given reward
+    public abstract void update(int node, double result);
+
+    abstract void setStatistics(int node, int visits, double value);
+
+    abstract void setMove(int node, int move);
+
+    abstract void setBlock(int node, int firstChild, int numChildren, int numExpanded);
+
+    // scratch for compact(): new id of every kept node, NONE for dropped ones
+    abstract int getForward(int node);
+
+    abstract void setForward(int node, int to);
+
+    // called before the ids below end are handed out
+    void reserve(int end) {
+    }
+
+    // called when the tree has shrunk to size ids for good, storage for the ids above may be given back
+    void trim() {
+    }
+
+    // give back all storage, the store can't be used afterwards
+    public void release() {
+    }
+
+    // drop the whole tree and start again from a single root position
+    public void reset(BitBoard board, int color) {
+        this.rootBoard = board;
+        this.rootColor = color;
+        this.size = 1;
+        trim();
+        reserve(1);
+        clear(ROOT, -1);
+    }
+
+    private void clear(int node, int nodeMove) {
+        setStatistics(node, 0, 0);
+        setMove(node, nodeMove);
+        setBlock(node, NONE, 0, 0);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    // how many times recycle() had to make room since the store was created
+    public int getRecycles() {
+        return recycles;
+    }
+
+    // true if there may not be room for the next expansion, search calls recycle() between iterations then
+    public boolean isNearlyFull() {
+        return capacity - size < MAX_BLOCK;
+    }
+
+    // give a node one child per packed move; the moves must fit, see isNearlyFull
+    public void expand(int node, int[] moves, int count) {
+        if (count == 0) {
+            setBlock(node, NO_MOVES, 0, 0);
+            return;
+        }
+        int first = size;
+        reserve(first + count);
+        for (int i = 0; i < count; i++) {
+            clear(first + i, moves[i]);
+        }
+        size += count;
+        setBlock(node, first, count, 0);
+    }
+
+    // pick one of the node's children that hasn't been visited yet at random and move it to the front of
+    // the unvisited part of the block, so the visited children stay the first numExpanded ones.
+    // Unvisited children are nothing but a move, so swapping the moves is enough.
+    public int expandAtRandom(int node, Random random) {
+        int numExpanded = getNumExpanded(node);
+        int first = getFirstChild(node) + numExpanded;
+        int pick = first + random.nextInt(getNumChildren(node) - numExpanded);
+        int picked = getMove(pick);
+        setMove(pick, getMove(first));
+        setMove(first, picked);
+        setBlock(node, getFirstChild(node), getNumChildren(node), numExpanded + 1);
+        return first;
+    }
+
+    // the child reached by the packed move, visited or not, or NONE
+    public int findChild(int node, int childMove) {
+        int first = getFirstChild(node);
+        int count = getNumChildren(node);
+        for (int i = 0; i < count; i++) {
+            if (getMove(first + i) == childMove) {
+                return first + i;
+            }
+        }
+        return NONE;
+    }
+
+    // make the given node the root, keeping only its subtree; the caller passes the position it stands for
+    public void reroot(int newRoot, BitBoard board, int color) {
+        mark(newRoot, 0);
+        compact(newRoot, 0);
+        trim();
+        setMove(ROOT, -1);
+        this.rootBoard = board;
+        this.rootColor = color;
+    }
+
+    // Make room by collapsing the least-visited subtrees: the visit threshold a node needs to keep its
+    // children doubles until at most half of the budget would still be in use.
+    public void recycle() {
+        int threshold = 1;
+        int live;
+        do {
+            threshold *= 2;
+            live = mark(ROOT, threshold);
+        } while (live > capacity / 2);
+        compact(ROOT, threshold);
+        recycles++;
+    }
+
+    // whether a node keeps its block when compacting with the given threshold (the new root always does)
+    private boolean keepsChildren(int node, int newRoot, int threshold) {
+        return getNumChildren(node) > 0 && (node == newRoot || getVisits(node) >= threshold);
+    }
+
+    // work out the new id of every node that is kept, in id order so parents are seen before their blocks;
+    // returns the number of nodes kept
+    private int mark(int newRoot, int threshold) {
+        for (int node = newRoot; node < size; node++) {
+            setForward(node, NONE);
+        }
+        setForward(newRoot, 0);
+        int live = 0;
+        for (int node = newRoot; node < size; node++) {
+            if (getForward(node) == NONE) {
+                continue;
+            }
+            setForward(node, live++);
+            if (keepsChildren(node, newRoot, threshold)) {
+                int first = getFirstChild(node);
+                for (int child = first; child < first + getNumChildren(node); child++) {
+                    setForward(child, 0);
+                }
+            }
+        }
+        return live;
+    }
+
+    // slide the kept nodes down to their new ids; a kept node only moves to a smaller id, and nodes are
+    // visited in id order, so nothing is overwritten before it has been copied
+    private void compact(int newRoot, int threshold) {
+        int live = 0;
+        for (int node = newRoot; node < size; node++) {
+            int to = getForward(node);
+            if (to == NONE) {
+                continue;
+            }
+            setStatistics(to, getVisits(node), getValue(node));
+            setMove(to, getMove(node));
+            if (keepsChildren(node, newRoot, threshold)) {
+                setBlock(to, getForward(getFirstChild(node)), getNumChildren(node), getNumExpanded(node));
+            } else {
+                // collapsed nodes are expanded again if the search comes back to them
+                setBlock(to, (getFirstChild(node) == NO_MOVES) ? NO_MOVES : NONE, 0, 0);
+            }
+            live++;
+        }
+        size = live;
+    }
+}
@@ -0,0 +1,189 @@
+package ubc.cosc322;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// NodeStore outside the Java heap, for budgets of hundreds of millions of nodes that would otherwise need a
+// huge -Xmx and give the garbage collector arrays of gigabytes to look after. Every node is a 32-byte record
+// in a direct buffer, and the buffers are chunks of 2^20 nodes: a single buffer can't hold more than 2 GB,
+// and chunks let the store grow with the tree instead of taking the whole budget up front.
+// When rootFromAction drops the rest of the tree, the chunks above the surviving subtree are freed as a
+// whole, right away rather than whenever the garbage collector gets to the buffers (see free). The store is
+// only searched on the calling thread, and MonteCarlo stops pondering before it rearranges the tree, so no
+// reader is left holding a freed chunk. -XX:MaxDirectMemorySize (by default as large as the heap limit) has
+// to be raised to fit the budget: 32 bytes per node.
+public class OffHeapNodeStore extends NodeStore {
+    private static final int CHUNK_SHIFT = 20;
+    private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+    // the record of a node
+    private static final int RECORD_SHIFT = 5;
+    private static final int VISITS = 0;
+    private static final int MOVE = 4;
+    private static final int VALUE = 8;
+    private static final int FIRST_CHILD = 16;
+    private static final int NUM_CHILDREN = 20;
+    private static final int NUM_EXPANDED = 24;
+    private static final int FORWARD = 28;
+
+    private final ByteBuffer[] chunks;
+
+    // Direct buffers have no public way to free them. Java 9 and later have Unsafe.invokeCleaner, Java 8 the
+    // buffer's own cleaner. If neither can be reached (a JDK that locks down sun.misc) chunks are only
+    // dropped and their memory waits for the collector; allocateDirect still collects by itself before it
+    // would exceed MaxDirectMemorySize, so the store keeps working, only its footprint isn't prompt.
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafe = theUnsafe.get(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            invokeCleaner = null;  // Java 8, free falls back to the buffer's cleaner
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    public OffHeapNodeStore(int capacity) {
+        super(capacity);
+        this.chunks = new ByteBuffer[((this.capacity - 1) >>> CHUNK_SHIFT) + 1];
+    }
+
+    private ByteBuffer chunk(int node) {
+        return chunks[node >>> CHUNK_SHIFT];
+    }
+
+    private static int offset(int node, int field) {
+        return ((node & CHUNK_MASK) << RECORD_SHIFT) + field;
+    }
+
+    // number of chunks holding memory, for reporting
+    public int getChunkCount() {
+        int count = 0;
+        for (ByteBuffer chunk : chunks) {
+            count += (chunk != null) ? 1 : 0;
+        }
+        return count;
+    }
+
+    @Override
+    void reserve(int end) {
+        for (int i = 0; i <= (end - 1) >>> CHUNK_SHIFT; i++) {
+            if (chunks[i] == null) {
+                chunks[i] = ByteBuffer.allocateDirect(1 << (CHUNK_SHIFT + RECORD_SHIFT)).order(ByteOrder.nativeOrder());
+            }
+        }
+    }
+
+    @Override
+    void trim() {
+        for (int i = ((size - 1) >>> CHUNK_SHIFT) + 1; i < chunks.length; i++) {
+            free(i);
+        }
+    }
+
+    @Override
+    public void release() {
+        for (int i = 0; i < chunks.length; i++) {
+            free(i);
+        }
+    }
+
+    // give the memory of a chunk back to the system and forget the chunk
+    private void free(int i) {
+        ByteBuffer chunk = chunks[i];
+        if (chunk == null) {
+            return;
+        }
+        chunks[i] = null;
+        try {
+            if (INVOKE_CLEANER != null) {
+                INVOKE_CLEANER.invoke(UNSAFE, chunk);
+            } else {
+                Method cleaner = chunk.getClass().getMethod("cleaner");
+                cleaner.setAccessible(true);
+                Object chunkCleaner = cleaner.invoke(chunk);
+                chunkCleaner.getClass().getMethod("clean").invoke(chunkCleaner);
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // the chunk is left to the garbage collector
+        }
+    }
+
+    @Override
+    public int getVisits(int node) {
+        return chunk(node).getInt(offset(node, VISITS));
+    }
+
+    @Override
+    public double getValue(int node) {
+        return chunk(node).getDouble(offset(node, VALUE));
+    }
+
+    @Override
+    public int getMove(int node) {
+        return chunk(node).getInt(offset(node, MOVE));
+    }
+
+    @Override
+    public int getFirstChild(int node) {
+        return chunk(node).getInt(offset(node, FIRST_CHILD));
+    }
+
+    @Override
+    public int getNumChildren(int node) {
+        return chunk(node).getInt(offset(node, NUM_CHILDREN));
+    }
+
+    @Override
+    public int getNumExpanded(int node) {
+        return chunk(node).getInt(offset(node, NUM_EXPANDED));
+    }
+
+    @Override
+    public void update(int node, double result) {
+        ByteBuffer chunk = chunk(node);
+        int visits = offset(node, VISITS), value = offset(node, VALUE);
+        chunk.putInt(visits, chunk.getInt(visits) + 1);
+        chunk.putDouble(value, chunk.getDouble(value) + result);
+    }
+
+    @Override
+    void setStatistics(int node, int visits, double value) {
+        ByteBuffer chunk = chunk(node);
+        chunk.putInt(offset(node, VISITS), visits);
+        chunk.putDouble(offset(node, VALUE), value);
+    }
+
+    @Override
+    void setMove(int node, int move) {
+        chunk(node).putInt(offset(node, MOVE), move);
+    }
+
+    @Override
+    void setBlock(int node, int first, int count, int expanded) {
+        ByteBuffer chunk = chunk(node);
+        chunk.putInt(offset(node, FIRST_CHILD), first);
+        chunk.putInt(offset(node, NUM_CHILDREN), count);
+        chunk.putInt(offset(node, NUM_EXPANDED), expanded);
+    }
+
+    @Override
+    int getForward(int node) {
+        return chunk(node).getInt(offset(node, FORWARD));
+    }
+
+    @Override
+    void setForward(int node, int to) {
+        chunk(node).putInt(offset(node, FORWARD), to);
+    }
+}
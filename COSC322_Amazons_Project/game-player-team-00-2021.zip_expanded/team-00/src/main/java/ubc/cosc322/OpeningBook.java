@@ -0,0 +1,217 @@
+package ubc.cosc322;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Precomputed moves for the first plies of the game, so they don't each cost a full search.
+// The book is a binary file: a header, then one fixed-size entry per position sorted by hash,
+//
+//   header: int MAGIC, int VERSION, int entry count, int 0
+//   entry:  long position hash (BitBoard.getHash with the side to move), int packed move,
+//           int visits of the move, float its win rate for the side to move
+//
+// It is memory-mapped and looked up by binary search in place, so opening it reads nothing onto the heap
+// and a lookup touches about log2(entries) entries. The generator runs long searches from the opening
+// position and follows the most visited moves of each side for a few plies:
+//
+//   java ubc.cosc322.OpeningBook <file> <plies> <iterations> [width]
+public class OpeningBook {
+    private static final int MAGIC = 0x414D5A42;  // "AMZB"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int ENTRY_BYTES = 20;
+    private static final int DEFAULT_WIDTH = 3;
+
+    private final MappedByteBuffer buffer;
+    private final int size;
+
+    private OpeningBook(MappedByteBuffer buffer, int size) {
+        this.buffer = buffer;
+        this.size = size;
+    }
+
+    // map a book file; the mapping stays valid after the channel is closed
+    public static OpeningBook open(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException(path + " is not an opening book");
+            }
+            int size = buffer.getInt(8);
+            if ((long) HEADER_BYTES + (long) size * ENTRY_BYTES > buffer.capacity()) {
+                throw new IOException(path + " is truncated");
+            }
+            return new OpeningBook(buffer, size);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // The book move for the side to move, or null if the position isn't in the book
+    public AmazonsAction lookup(BitBoard board, int color) {
+        int entry = findPlayable(board, color);
+        return (entry == -1) ? null : AmazonsAction.fromPacked(getMove(entry));
+    }
+
+    // The entry of the position with a move that can be played in it, -1 if there is none. A book made for
+    // another board orientation (or a hash collision) can't pass this: the move has to be one the server
+    // accepts, so it is looked for among the legal moves of the position.
+    public int findPlayable(BitBoard board, int color) {
+        int entry = find(board.getHash(color));
+        return (entry != -1 && isLegal(board, color, getMove(entry))) ? entry : -1;
+    }
+
+    // the move list is allocated per check, as engines playing concurrently in the Arena share a book
+    private static boolean isLegal(BitBoard board, int color, int move) {
+        int[] legalMoves = new int[AmazonsActionFactory.MAX_MOVES];
+        int count = AmazonsActionFactory.generateMoves(board, color, legalMoves);
+        for (int i = 0; i < count; i++) {
+            if (legalMoves[i] == move) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // index of the entry for a position hash, -1 if there is none
+    public int find(long hash) {
+        int low = 0, high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = Long.compare(buffer.getLong(offset(mid)), hash);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    public int getMove(int entry) {
+        return buffer.getInt(offset(entry) + 8);
+    }
+
+    public int getVisits(int entry) {
+        return buffer.getInt(offset(entry) + 12);
+    }
+
+    public float getValue(int entry) {
+        return buffer.getFloat(offset(entry) + 16);
+    }
+
+    private static int offset(int entry) {
+        return HEADER_BYTES + entry * ENTRY_BYTES;
+    }
+
+    // write count entries, sorted by hash, as a book file
+    public static void write(String path, long[] hashes, int[] moves, int[] visits, float[] values, int count) throws IOException {
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(hashes[a], hashes[b]));
+        ByteBuffer bytes = ByteBuffer.allocate(HEADER_BYTES + count * ENTRY_BYTES);
+        bytes.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(0);
+        for (int i : order) {
+            bytes.putLong(hashes[i]).putInt(moves[i]).putInt(visits[i]).putFloat(values[i]);
+        }
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(Paths.get(path)))) {
+            out.write(bytes.array());
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.out.println("usage: OpeningBook <file> <plies> <iterations> [width]");
+            return;
+        }
+        String path = args[0];
+        int plies = Integer.parseInt(args[1]);
+        int iterations = Integer.parseInt(args[2]);
+        int width = (args.length > 3) ? Integer.parseInt(args[3]) : DEFAULT_WIDTH;
+
+        // breadth first from the opening position, black to move as in a game; positions reached
+        // by more than one move order are searched once
+        Map<Long, int[]> entries = new LinkedHashMap<>();  // hash -> {move, visits, win rate bits}
+        Deque<BitBoard> boards = new ArrayDeque<>();
+        Deque<int[]> states = new ArrayDeque<>();  // {color, ply} of each board
+        boards.add(BitBoard.startPosition());
+        states.add(new int[]{BitBoard.BLACK_QUEEN, 0});
+        long start = System.currentTimeMillis();
+        while (!boards.isEmpty()) {
+            BitBoard board = boards.poll();
+            int[] state = states.poll();
+            int color = state[0], ply = state[1];
+            long hash = board.getHash(color);
+            if (entries.containsKey(hash)) {
+                continue;
+            }
+
+            MonteCarlo monteCarlo = new MonteCarlo(new TreeNode(new BitBoard(board), color, false), Long.MAX_VALUE / 4, 1.4);
+            monteCarlo.setMaxIterations(iterations);
+            monteCarlo.setMoveOrdering(1.0);
+            monteCarlo.setSeed(hash);
+            AmazonsAction action = monteCarlo.MCTS();
+            if (action == null) {
+                continue;
+            }
+            TreeNode root = monteCarlo.root;
+            int move = action.toPacked();
+            List<Integer> children = new ArrayList<>();
+            for (int i = 0; i < root.getNumChildren(); i++) {
+                children.add(i);
+                if (root.getChildMove(i) == move) {
+                    TreeNode child = root.getChild(i);
+                    float value = (child.N != 0) ? (float) (child.getQ() / child.N) : 0f;
+                    entries.put(hash, new int[]{move, child.N, Float.floatToIntBits(value)});
+                }
+            }
+            System.out.println("book: " + entries.size() + " positions, ply " + ply + ", " + action);
+
+            if (ply + 1 < plies) {
+                // the most visited replies are the ones worth having an answer to
+                children.sort((a, b) -> Integer.compare(root.getChild(b).N, root.getChild(a).N));
+                int opponent = (color == BitBoard.WHITE_QUEEN) ? BitBoard.BLACK_QUEEN : BitBoard.WHITE_QUEEN;
+                for (int i = 0; i < Math.min(width, children.size()); i++) {
+                    BitBoard next = new BitBoard(board);
+                    AmazonsAction.applyMove(root.getChildMove(children.get(i)), next);
+                    boards.add(next);
+                    states.add(new int[]{opponent, ply + 1});
+                }
+            }
+        }
+
+        int count = entries.size();
+        long[] hashes = new long[count];
+        int[] moves = new int[count], visits = new int[count];
+        float[] values = new float[count];
+        int i = 0;
+        for (Map.Entry<Long, int[]> entry : entries.entrySet()) {
+            hashes[i] = entry.getKey();
+            moves[i] = entry.getValue()[0];
+            visits[i] = entry.getValue()[1];
+            values[i] = Float.intBitsToFloat(entry.getValue()[2]);
+            i++;
+        }
+        write(path, hashes, moves, visits, values, count);
+        System.out.printf("wrote %d positions to %s in %.1f s%n", count, path, (System.currentTimeMillis() - start) / 1000.0);
+    }
+}
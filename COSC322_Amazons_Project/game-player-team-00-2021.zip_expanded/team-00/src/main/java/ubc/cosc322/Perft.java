@@ -0,0 +1,191 @@
+package ubc.cosc322;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Headless move-generation verifier: counts the positions reached after every sequence of depth complete
+// moves (queen move plus arrow shot), like chess perft. Counts are exact, so a new generator can be
+// checked against AmazonsActionFactory.getActions with --reference, and the leaf rate doubles as a
+// throughput figure.
+//
+//   java ubc.cosc322.Perft <depth> [position] [--divide] [--reference] [--threads n]
+//
+// A position is the 10 rows from y = 0 to 9 separated by '/', each 10 characters of . (empty),
+// W (white queen), B (black queen) or X (arrow), then a space and the side to move, w or b.
+// Without one the search starts from the opening position with black to move, as in a game.
+public class Perft {
+    public static final String START_POSITION =
+        "...W..W.../........../........../W........W/........../"
+      + "........../B........B/........../........../...B..B... b";
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length == 0) {
+            System.out.println("usage: Perft <depth> [position] [--divide] [--reference] [--threads n]");
+            return;
+        }
+        int depth = Integer.parseInt(args[0]);
+        String position = START_POSITION;
+        boolean divide = false, reference = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--divide")) {
+                divide = true;
+            } else if (args[i].equals("--reference")) {
+                reference = true;
+            } else if (args[i].equals("--threads")) {
+                threads = Integer.parseInt(args[++i]);
+            } else {
+                position = args[i];
+                if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                    position += " " + args[++i];  // side to move given as a separate argument
+                }
+            }
+        }
+
+        BitBoard board = parsePosition(position);
+        int color = parseColor(position);
+        AmazonsUtility.printBoard(board);
+
+        long start = System.nanoTime();
+        int[] rootMoves = new int[AmazonsActionFactory.MAX_MOVES];
+        int rootCount = AmazonsActionFactory.generateMoves(board, color, rootMoves);
+        long[] counts = divide(board, color, depth, rootMoves, rootCount, threads);
+        long nodes = 0;
+        for (long count : counts) {
+            nodes += count;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        if (divide) {
+            for (int i = 0; i < rootCount; i++) {
+                System.out.println(AmazonsAction.fromPacked(rootMoves[i]) + ": " + counts[i]);
+            }
+        }
+        System.out.printf("perft(%d) = %d in %.3f s, %.0f nodes/s on %d threads%n",
+                          depth, (depth == 0) ? 1 : nodes, seconds, nodes / seconds, threads);
+
+        if (reference) {
+            start = System.nanoTime();
+            long expected = referencePerft(board, color, depth);
+            seconds = (System.nanoTime() - start) / 1e9;
+            boolean matches = expected == ((depth == 0) ? 1 : nodes);
+            System.out.printf("reference perft(%d) = %d in %.3f s: %s%n",
+                              depth, expected, seconds, matches ? "match" : "MISMATCH");
+            if (!matches) {
+                System.exit(1);
+            }
+        }
+    }
+
+    // Count the leaves below every root move, spreading the root moves over the threads; each thread
+    // takes the next unclaimed root move and searches it on its own copy of the board.
+    public static long[] divide(BitBoard board, int color, int depth, int[] rootMoves, int rootCount, int threads)
+            throws InterruptedException {
+        long[] counts = new long[rootCount];
+        if (depth == 0) {
+            return counts;
+        }
+        AtomicInteger nextMove = new AtomicInteger();
+        int opponent = (color == BitBoard.WHITE_QUEEN) ? BitBoard.BLACK_QUEEN : BitBoard.WHITE_QUEEN;
+        Thread[] workers = new Thread[Math.max(1, threads)];
+        for (int t = 0; t < workers.length; t++) {
+            workers[t] = new Thread(() -> {
+                BitBoard own = new BitBoard(board);
+                int[][] buffers = new int[depth][AmazonsActionFactory.MAX_MOVES];
+                for (int i = nextMove.getAndIncrement(); i < rootCount; i = nextMove.getAndIncrement()) {
+                    AmazonsAction.applyMove(rootMoves[i], own);
+                    counts[i] = perft(own, opponent, depth - 1, buffers);
+                    undoMove(rootMoves[i], own);
+                }
+            }, "perft-" + t);
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return counts;
+    }
+
+    // number of move sequences of the given length, played and taken back in place on the board;
+    // buffers holds one move buffer per remaining ply
+    public static long perft(BitBoard board, int color, int depth, int[][] buffers) {
+        if (depth == 0) {
+            return 1;
+        }
+        int[] moves = buffers[depth - 1];
+        int count = AmazonsActionFactory.generateMoves(board, color, moves);
+        if (depth == 1) {
+            return count;  // the leaves themselves don't need to be played
+        }
+        int opponent = (color == BitBoard.WHITE_QUEEN) ? BitBoard.BLACK_QUEEN : BitBoard.WHITE_QUEEN;
+        long nodes = 0;
+        for (int i = 0; i < count; i++) {
+            AmazonsAction.applyMove(moves[i], board);
+            nodes += perft(board, opponent, depth - 1, buffers);
+            undoMove(moves[i], board);
+        }
+        return nodes;
+    }
+
+    // take a packed move back: lift the arrow, then return the queen
+    private static void undoMove(int move, BitBoard board) {
+        board.removeArrow(AmazonsAction.getArrowDest(move));
+        board.moveQueen(AmazonsAction.getQueenDest(move), AmazonsAction.getQueenSrc(move));
+    }
+
+    // the same count with the original list-based generator and board copies, slow but independent
+    public static long referencePerft(BitBoard board, int color, int depth) {
+        if (depth == 0) {
+            return 1;
+        }
+        ArrayList<AmazonsAction> actions = AmazonsActionFactory.getActions(board, color);
+        if (depth == 1) {
+            return actions.size();
+        }
+        int opponent = (color == BitBoard.WHITE_QUEEN) ? BitBoard.BLACK_QUEEN : BitBoard.WHITE_QUEEN;
+        long nodes = 0;
+        for (AmazonsAction action : actions) {
+            nodes += referencePerft(AmazonsAction.applyAction(action, board), opponent, depth - 1);
+        }
+        return nodes;
+    }
+
+    // the board part of a position string, see the class comment
+    public static BitBoard parsePosition(String position) {
+        String[] rows = position.trim().split("\\s+")[0].split("/");
+        if (rows.length != BitBoard.SIZE) {
+            throw new IllegalArgumentException("expected " + BitBoard.SIZE + " rows: " + position);
+        }
+        BitBoard board = new BitBoard();
+        for (int y = 0; y < BitBoard.SIZE; y++) {
+            if (rows[y].length() != BitBoard.SIZE) {
+                throw new IllegalArgumentException("row " + y + " needs " + BitBoard.SIZE + " squares: " + rows[y]);
+            }
+            for (int x = 0; x < BitBoard.SIZE; x++) {
+                switch (rows[y].charAt(x)) {
+                    case '.': break;
+                    case 'W': board.set(BitBoard.square(y, x), BitBoard.WHITE_QUEEN); break;
+                    case 'B': board.set(BitBoard.square(y, x), BitBoard.BLACK_QUEEN); break;
+                    case 'X': board.set(BitBoard.square(y, x), BitBoard.ARROW); break;
+                    default: throw new IllegalArgumentException("unknown square '" + rows[y].charAt(x) + "' in row " + y);
+                }
+            }
+        }
+        return board;
+    }
+
+    // the side to move of a position string, black if it is left out
+    public static int parseColor(String position) {
+        String[] parts = position.trim().split("\\s+");
+        if (parts.length < 2) {
+            return BitBoard.BLACK_QUEEN;
+        }
+        if (parts[1].equalsIgnoreCase("w")) {
+            return BitBoard.WHITE_QUEEN;
+        }
+        if (parts[1].equalsIgnoreCase("b")) {
+            return BitBoard.BLACK_QUEEN;
+        }
+        throw new IllegalArgumentException("side to move must be w or b: " + parts[1]);
+    }
+}
@@ -0,0 +1,92 @@
+package ubc.cosc322;
+
+import java.util.Random;
+
+// Random playouts on one mutable board, for hybrid rollout-plus-evaluation search. Each step picks one of
+// the side's queen moves uniformly, makes it in place, then picks one of the arrow shots from the new
+// square the same way, so only the at most 4 * 35 queen destinations and 35 arrow squares of the move
+// being made are ever listed, never the thousands of complete moves. Nothing is allocated per playout.
+// Not thread-safe: every search thread needs its own engine.
+public class PlayoutEngine {
+    // cut-off for playing on until one side has no moves left
+    public static final int TO_END = Integer.MAX_VALUE;
+
+    private static final int WHITE_QUEEN = 1;
+    private static final int BLACK_QUEEN = 2;
+    private static final int[][][] RAYS = AmazonsActionFactory.RAYS;
+
+    private final BitBoard board = new BitBoard();
+    private final int[] queens = new int[4];
+    private final int[] sources = new int[4 * 35];
+    private final int[] targets = new int[4 * 35];
+
+    // Play random moves from the position with color to move, and return the chance that color wins:
+    // 1 or 0 if the game ends within cutoff moves, otherwise the HeuristicEvaluator score after cutoff
+    // moves through the sigmoid. queenMove is a queen move already made on the board whose arrow is still
+    // to be shot (a split-ply arrow node), or -1.
+    public double playout(BitBoard start, int color, int queenMove, int cutoff, Random random) {
+        board.copyFrom(start);
+        int toMove = color;
+        if (queenMove != -1) {
+            shootArrow(AmazonsAction.getQueenDest(queenMove), random);
+            toMove = opponent(toMove);
+        }
+        for (int moves = 0; moves < cutoff; moves++) {
+            if (!playRandomMove(toMove, random)) {
+                return (toMove == color) ? 0 : 1;  // the side to move is out of moves and loses
+            }
+            toMove = opponent(toMove);
+        }
+        double whiteWins = AmazonsUtility.sigmoid(HeuristicEvaluator.getHeuristicEval(board, toMove));
+        return (color == WHITE_QUEEN) ? whiteWins : 1 - whiteWins;
+    }
+
+    // make a random move for the colour, false if it has none
+    private boolean playRandomMove(int color, Random random) {
+        int queenCount = board.getQueens(color, queens);
+        long occupiedLo = board.occupiedLo(), occupiedHi = board.occupiedHi();
+        int count = 0;
+        for (int q = 0; q < queenCount; q++) {
+            int src = queens[q];
+            for (int[] ray : RAYS[src]) {
+                for (int dest : ray) {
+                    if (isOccupied(occupiedLo, occupiedHi, dest)) {
+                        break;
+                    }
+                    sources[count] = src;
+                    targets[count++] = dest;
+                }
+            }
+        }
+        if (count == 0) {
+            return false;
+        }
+        int pick = random.nextInt(count);
+        board.moveQueen(sources[pick], targets[pick]);
+        shootArrow(targets[pick], random);
+        return true;
+    }
+
+    // fire a random arrow from the queen on square from; there is always one, at least back where it came from
+    private void shootArrow(int from, Random random) {
+        long occupiedLo = board.occupiedLo(), occupiedHi = board.occupiedHi();
+        int count = 0;
+        for (int[] ray : RAYS[from]) {
+            for (int arrow : ray) {
+                if (isOccupied(occupiedLo, occupiedHi, arrow)) {
+                    break;
+                }
+                targets[count++] = arrow;
+            }
+        }
+        board.placeArrow(targets[random.nextInt(count)]);
+    }
+
+    private static boolean isOccupied(long occupiedLo, long occupiedHi, int sq) {
+        return (((sq < 64) ? (occupiedLo >>> sq) : (occupiedHi >>> (sq - 64))) & 1) != 0;
+    }
+
+    private static int opponent(int color) {
+        return (color == WHITE_QUEEN) ? BLACK_QUEEN : WHITE_QUEEN;
+    }
+}
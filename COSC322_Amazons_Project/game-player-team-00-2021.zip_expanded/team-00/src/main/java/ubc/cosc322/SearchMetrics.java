@@ -0,0 +1,177 @@
+package ubc.cosc322;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters for one move's search, collected by MonteCarlo when enabled with setMetricsEnabled and
+// printed as a single key=value line after the move. Without it the search only pays a null check.
+// The counters are thread-safe, so every worker of a parallel search records into the same instance.
+public class SearchMetrics {
+    // the phases an iteration's time is split into
+    public static final int SELECTION = 0;
+    public static final int EXPANSION = 1;
+    public static final int EVALUATION = 2;
+    public static final int BACKPROPAGATION = 3;
+    private static final String[] PHASE_NAMES = {"selection", "expansion", "evaluation", "backprop"};
+
+    // leaf depths in plies (two per complete move in a split-ply tree), deeper leaves count in the last bucket
+    public static final int MAX_DEPTH = 2 * BitBoard.SQUARES;
+
+    private final LongAdder iterations = new LongAdder();
+    private final LongAdder nodesAllocated = new LongAdder();
+    private final LongAdder[] phaseNanos = new LongAdder[PHASE_NAMES.length];
+    private final AtomicLongArray depths = new AtomicLongArray(MAX_DEPTH + 1);
+
+    // visits kept / visits before over the root changes since the last report, 1 if there was none
+    private double reuse = 1.0;
+    private boolean rerooted;
+    private int moves;
+
+    // share of evaluation cache lookups answered from the cache since the last report, NaN without a cache
+    private double cacheHitRate = Double.NaN;
+
+    // the move counts of an endgame the solver played (see EndgameSolver), or -1 if the search played
+    private int endgameOurs = -1;
+    private int endgameTheirsLower;
+    private int endgameTheirsUpper;
+
+    // visits and win rate of the book entry the move was played from, visits -1 if it wasn't a book move
+    private int bookVisits = -1;
+    private float bookValue;
+
+    public SearchMetrics() {
+        for (int i = 0; i < phaseNanos.length; i++) {
+            phaseNanos[i] = new LongAdder();
+        }
+    }
+
+    // one finished iteration: the depth of its leaf below the root, and nanoseconds per phase
+    public void recordIteration(int depth, long selection, long expansion, long evaluation, long backpropagation) {
+        iterations.increment();
+        depths.incrementAndGet(Math.min(depth, MAX_DEPTH));
+        phaseNanos[SELECTION].add(selection);
+        phaseNanos[EXPANSION].add(expansion);
+        phaseNanos[EVALUATION].add(evaluation);
+        phaseNanos[BACKPROPAGATION].add(backpropagation);
+    }
+
+    // nodes created by the search (positions linked in from a transposition table don't count)
+    public void addNodes(int count) {
+        nodesAllocated.add(count);
+    }
+
+    // the root moved on to a child that had keptVisits of the previousVisits the old root had
+    public void recordReuse(int previousVisits, int keptVisits) {
+        reuse *= (previousVisits > 0) ? (double) keptVisits / previousVisits : 0.0;
+        rerooted = true;
+    }
+
+    public void recordCacheHitRate(double hitRate) {
+        cacheHitRate = hitRate;
+    }
+
+    // the move was played by the endgame solver: ours moves left against theirsLower to theirsUpper
+    public void recordEndgame(int ours, int theirsLower, int theirsUpper) {
+        endgameOurs = ours;
+        endgameTheirsLower = theirsLower;
+        endgameTheirsUpper = theirsUpper;
+    }
+
+    // the move came from the opening book, from an entry with these visits and win rate
+    public void recordBookMove(int visits, float value) {
+        bookVisits = visits;
+        bookValue = value;
+    }
+
+    public long getIterations() {
+        return iterations.sum();
+    }
+
+    public long getNodesAllocated() {
+        return nodesAllocated.sum();
+    }
+
+    // total nanoseconds spent in one of the phases
+    public long getPhaseNanos(int phase) {
+        return phaseNanos[phase].sum();
+    }
+
+    // how many iterations ended at a leaf of this depth
+    public long getDepthCount(int depth) {
+        return depths.get(depth);
+    }
+
+    // share of the old root's visits still in the tree after the root changes since the last report,
+    // NaN if the root hasn't changed
+    public double getReuseRatio() {
+        return rerooted ? reuse : Double.NaN;
+    }
+
+    public double getCacheHitRate() {
+        return cacheHitRate;
+    }
+
+    // the metrics line for the next move, which took elapsedMs and left a tree of treeSize nodes
+    public String report(long elapsedMs, long treeSize) {
+        long count = getIterations();
+        StringBuilder line = new StringBuilder("metrics");
+        line.append(" move=").append(++moves);
+        line.append(" iterations=").append(count);
+        line.append(" ips=").append(elapsedMs > 0 ? count * 1000 / elapsedMs : 0);
+        line.append(" nodes=").append(getNodesAllocated());
+        line.append(" tree=").append(treeSize);
+        line.append(" reuse=").append(rerooted ? String.format(Locale.ROOT, "%.3f", reuse) : "-");
+        line.append(" cache=").append(Double.isNaN(cacheHitRate) ? "-" : String.format(Locale.ROOT, "%.3f", cacheHitRate));
+        line.append(" endgame=").append(endgameSummary());
+        line.append(" book=").append((bookVisits < 0) ? "-" : String.format(Locale.ROOT, "%d/%.3f", bookVisits, bookValue));
+        long totalNanos = 0;
+        for (LongAdder phase : phaseNanos) {
+            totalNanos += phase.sum();
+        }
+        for (int i = 0; i < PHASE_NAMES.length; i++) {
+            double share = (totalNanos > 0) ? (double) phaseNanos[i].sum() / totalNanos : 0.0;
+            line.append(' ').append(PHASE_NAMES[i]).append('=').append(String.format(Locale.ROOT, "%.3f", share));
+        }
+        // depth histogram as depth:count pairs, empty depths left out
+        line.append(" depths=");
+        boolean first = true;
+        for (int depth = 0; depth <= MAX_DEPTH; depth++) {
+            long n = depths.get(depth);
+            if (n != 0) {
+                line.append(first ? "" : ",").append(depth).append(':').append(n);
+                first = false;
+            }
+        }
+        return line.toString();
+    }
+
+    // start counting the next move
+    public void reset() {
+        iterations.reset();
+        nodesAllocated.reset();
+        for (LongAdder phase : phaseNanos) {
+            phase.reset();
+        }
+        for (int depth = 0; depth <= MAX_DEPTH; depth++) {
+            depths.set(depth, 0);
+        }
+        reuse = 1.0;
+        rerooted = false;
+        cacheHitRate = Double.NaN;
+        endgameOurs = -1;
+        bookVisits = -1;
+    }
+
+    // ours/theirs/outcome, theirs as a range when it is only bounded; won once we have more moves than
+    // they can have, lost once we have no more than they surely have
+    private String endgameSummary() {
+        if (endgameOurs < 0) {
+            return "-";
+        }
+        String theirs = (endgameTheirsLower == endgameTheirsUpper) ? String.valueOf(endgameTheirsLower)
+                                                                   : endgameTheirsLower + "-" + endgameTheirsUpper;
+        String outcome = (endgameOurs > endgameTheirsUpper) ? "won" : (endgameOurs <= endgameTheirsLower) ? "lost" : "open";
+        return endgameOurs + "/" + theirs + "/" + outcome;
+    }
+}
@@ -0,0 +1,81 @@
+package ubc.cosc322;
+
+// Decides how long to think on each move from what is left of our game clock and the phase of the game,
+// instead of a fixed time per move. Every move fills one square, so the empty squares bound how many moves
+// we still have to make; the clock is shared out over those, weighted towards the middlegame, where the
+// regions are still contested and the choice matters most. A forced move gets the minimum, and so does
+// the filling phase once every region belongs to one colour only.
+// During the search canStopEarly ends a move as soon as the choice can no longer change.
+public class TimeManager {
+    // time weights per phase, relative to an even share of the clock
+    private static final double OPENING_WEIGHT = 0.8;
+    private static final double MIDDLEGAME_WEIGHT = 1.5;
+    private static final double ENDGAME_WEIGHT = 1.0;
+    private static final double SEPARATED_WEIGHT = 0.25;
+
+    // plan for at least this many moves, so the clock isn't spent too early
+    private static final int MIN_MOVES_LEFT = 8;
+    // don't stop early before the search has had this long to settle
+    private static final long MIN_SEARCH_MS = 100;
+
+    private long remainingMs;
+    private final long minMoveMs;
+    private final long maxMoveMs;
+
+    // gameTimeMs is our total thinking time for the game, every single move stays within [minMoveMs, maxMoveMs]
+    public TimeManager(long gameTimeMs, long minMoveMs, long maxMoveMs) {
+        this.remainingMs = gameTimeMs;
+        this.minMoveMs = minMoveMs;
+        this.maxMoveMs = maxMoveMs;
+    }
+
+    // a clock of gameTimeMs with the move limits in the proportions of the tournament's 3 minutes
+    // (200 ms to 15 s a move)
+    public static TimeManager forClock(long gameTimeMs) {
+        return new TimeManager(gameTimeMs, gameTimeMs / 900, gameTimeMs / 12);
+    }
+
+    public long getRemainingMs() {
+        return remainingMs;
+    }
+
+    // time budget in milliseconds for the move of the given player in this position
+    public long allocate(BitBoard board, int color) {
+        int legalMoves = AmazonsActionFactory.generateMoves(board, color, new int[AmazonsActionFactory.MAX_MOVES]);
+        if (legalMoves <= 1) {
+            return minMoveMs;  // nothing to think about
+        }
+        int empty = BitBoard.SQUARES - Long.bitCount(board.occupiedLo()) - Long.bitCount(board.occupiedHi());
+        int movesLeft = Math.max(MIN_MOVES_LEFT, (empty + 1) / 2);
+        double weight;
+        if (EndgameSolver.countContestedRegions(board) == 0) {
+            weight = SEPARATED_WEIGHT;
+        } else if (empty > 70) {
+            weight = OPENING_WEIGHT;
+        } else if (empty >= 30) {
+            weight = MIDDLEGAME_WEIGHT;
+        } else {
+            weight = ENDGAME_WEIGHT;
+        }
+        long budget = (long) (weight * remainingMs / movesLeft);
+        return Math.max(minMoveMs, Math.min(maxMoveMs, Math.min(budget, remainingMs)));
+    }
+
+    // take the time the move actually used off the clock
+    public void moveFinished(long usedMs) {
+        remainingMs = Math.max(0, remainingMs - usedMs);
+    }
+
+    // True if the search can stop: the most visited root move would stay ahead even if every iteration
+    // left in the budget, at the rate seen so far, went to the runner-up. MCTS plays the move with the best
+    // win rate, so this only applies while the most visited move is also that one.
+    public boolean canStopEarly(int bestVisits, int secondVisits, boolean mostVisitedIsChosen,
+                                int iterations, long elapsedMs, long allocatedMs) {
+        if (!mostVisitedIsChosen || elapsedMs < MIN_SEARCH_MS) {
+            return false;
+        }
+        double iterationsPerMs = iterations / (double) elapsedMs;
+        double remainingIterations = iterationsPerMs * Math.max(0, allocatedMs - elapsedMs);
+        return secondVisits + remainingIterations < bestVisits;
+    }
+}
@@ -0,0 +1,156 @@
+package ubc.cosc322;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Bounded table of search nodes keyed by the Zobrist hash of their position and side to move. The same
+// position is often reached by different move orders (two queens moving in either order, arrows fired
+// in either order), and with the table those paths lead to one shared node, so its statistics are
+// pooled and its subtree is only built once. Entries live in buckets of four; when a bucket is full the
+// least-visited entry is replaced. An evicted node stays in the tree, it just can't be shared any more.
+// The buckets are guarded by a fixed set of striped locks, so the threads of a tree-parallel search only
+// wait for each other when their positions land on the same stripe.
+public class TranspositionTable {
+    private static final int BUCKET_SIZE = 4;
+    private static final int STRIPES = 64;  // a power of two
+
+    private final long[] keys;
+    private final TreeNode[] nodes;
+    private final int bucketMask;
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+    // the occupied slots, so purging and clearing cost the live entries rather than the capacity
+    private final int[] used;
+    private final AtomicInteger usedCount = new AtomicInteger();
+
+    // capacity is the number of entries, rounded down to a power of two
+    public TranspositionTable(int capacity) {
+        int buckets = Integer.highestOneBit(Math.max(1, capacity / BUCKET_SIZE));
+        this.keys = new long[buckets * BUCKET_SIZE];
+        this.nodes = new TreeNode[buckets * BUCKET_SIZE];
+        this.bucketMask = buckets - 1;
+        this.used = new int[buckets * BUCKET_SIZE];
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    public int capacity() {
+        return nodes.length;
+    }
+
+    // first slot of the bucket a key belongs to
+    private int bucket(long key) {
+        return ((int) (key ^ (key >>> 32)) & bucketMask) * BUCKET_SIZE;
+    }
+
+    private ReentrantLock lock(int start) {
+        return locks[(start / BUCKET_SIZE) & (STRIPES - 1)];
+    }
+
+    // the node of this position with the given player to move, or null; the board is compared
+    // as well, so a hash collision can never link in the wrong position
+    public TreeNode get(BitBoard board, int color) {
+        long key = board.getHash(color);
+        int start = bucket(key);
+        ReentrantLock lock = lock(start);
+        lock.lock();
+        try {
+            return find(start, key, board, color);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // The node already stored for the position of the given node, or else the given node after storing
+    // it, in a free slot or the one of the least-visited node. The lookup and the insert are one step, so
+    // threads that reach a new position at the same time all end up with the same node.
+    public TreeNode putIfAbsent(TreeNode node) {
+        long key = node.boardState.getHash(node.color);
+        int start = bucket(key);
+        ReentrantLock lock = lock(start);
+        lock.lock();
+        try {
+            TreeNode existing = find(start, key, node.boardState, node.color);
+            if (existing != null) {
+                return existing;
+            }
+            int victim = start;
+            for (int i = start; i < start + BUCKET_SIZE; i++) {
+                if (nodes[i] == null) {
+                    victim = i;
+                    break;
+                }
+                if (nodes[i].N < nodes[victim].N) {
+                    victim = i;
+                }
+            }
+            if (nodes[victim] == null) {
+                used[usedCount.getAndIncrement()] = victim;
+            }
+            keys[victim] = key;
+            nodes[victim] = node;
+            return node;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // called with the lock of the bucket held
+    private TreeNode find(int start, long key, BitBoard board, int color) {
+        for (int i = start; i < start + BUCKET_SIZE; i++) {
+            TreeNode node = nodes[i];
+            if (node != null && keys[i] == key && node.color == color && node.boardState.equals(board)) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    // drop every entry that can't come up again below the given root: each move adds an arrow and none
+    // is ever removed, so a later position has all of the root's arrows plus at least one more.
+    // This also lets the discarded part of the old tree be garbage collected.
+    public void retainDescendantsOf(BitBoard root) {
+        lockAll();
+        try {
+            int arrows = root.getArrowCount();
+            int kept = 0, count = usedCount.get();
+            for (int k = 0; k < count; k++) {
+                int i = used[k];
+                TreeNode node = nodes[i];
+                if (node.boardState.getArrowCount() <= arrows || !node.boardState.hasArrowsOf(root)) {
+                    nodes[i] = null;
+                } else {
+                    used[kept++] = i;
+                }
+            }
+            usedCount.set(kept);
+        } finally {
+            unlockAll();
+        }
+    }
+
+    public void clear() {
+        lockAll();
+        try {
+            int count = usedCount.get();
+            for (int k = 0; k < count; k++) {
+                nodes[used[k]] = null;
+            }
+            usedCount.set(0);
+        } finally {
+            unlockAll();
+        }
+    }
+
+    private void lockAll() {
+        for (ReentrantLock lock : locks) {
+            lock.lock();
+        }
+    }
+
+    private void unlockAll() {
+        for (ReentrantLock lock : locks) {
+            lock.unlock();
+        }
+    }
+}
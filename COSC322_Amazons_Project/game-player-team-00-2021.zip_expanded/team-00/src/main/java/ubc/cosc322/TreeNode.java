@@ -1,62 +1,92 @@
 package ubc.cosc322;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 public class TreeNode {
-    public static int maxDepth = 0;  // tracks maximum depth encountered in the tree
-    int depth;                // depth of this node in the tree
+    // per-thread scratch buffer the move generator writes into before the moves are trimmed and kept
+    private static final ThreadLocal<int[]> MOVE_BUFFER = ThreadLocal.withInitial(() -> new int[AmazonsActionFactory.MAX_MOVES]);
+
+    private static final TreeNode[] NO_CHILDREN = new TreeNode[0];
+
+    // lock-free updates of the statistics, so several search threads can share one tree
+    private static final AtomicIntegerFieldUpdater<TreeNode> VISITS = AtomicIntegerFieldUpdater.newUpdater(TreeNode.class, "N");
+    private static final AtomicLongFieldUpdater<TreeNode> REWARD = AtomicLongFieldUpdater.newUpdater(TreeNode.class, "qBits");
+
+    // MCTS-Solver proof states, for the player who moved into the node like Q
+    public static final byte UNPROVEN = 0;
+    public static final byte PROVEN_WIN = 1;
+    public static final byte PROVEN_LOSS = -1;
+
     int color;                // current player's color at this node
-    double Q;                 // the Cumulative reward
-    int N;                    //  Visit count
-    int[][][] boardState;     // gameboard state (layer 0: board; layer 1: mobility map)
-    AmazonsAction action;     // 	Action taken to reach this node (null for the root)
-    TreeNode parent;          // Parent node (null for the root)
-    ArrayList<TreeNode> children;         //   Expanded child nodes.
-    ArrayList<AmazonsAction> possibleActions; //list of the  moves not yet expanded
-    boolean expanded;         // whether this node has been fully expanded
-    boolean actionsGenerated; //whether the list of Possible Actions has been Generated
+    volatile long qBits;      // the Cumulative reward, as the bits of a double (see getQ)
+    volatile int N;           //  Visit count
+    volatile byte proof;      // game-theoretic value once known (PROVEN_WIN / PROVEN_LOSS), else UNPROVEN
+    BitBoard boardState;      // gameboard state (queen and arrow occupancy masks)
+    int move;                 // 	packed move that created this node, see AmazonsAction.pack (-1 for the root)
+    volatile TreeNode[] children;         //   Expanded child nodes, the first numChildren entries are used
+    int[] childMoves;         // packed move leading to each child; a shared child was created by another parent's move
+    float[] childPriors;      // prior of the move to each child when expanded best-first (see expandBest), else null
+    volatile int numChildren; // count of the expanded child nodes
+    int[] possibleMoves;      //packed moves, the first numPossibleMoves of which are not yet expanded
+    volatile int numPossibleMoves;        // count of the moves not yet expanded
+    float[] possiblePriors;   // once ordered: priors of the unexpanded moves, which are sorted best last
+    volatile boolean expanded;            // whether this node has been fully expanded
+    volatile boolean actionsGenerated;    //whether the list of Possible Actions has been Generated
+    boolean splitPly;         // whether the tree branches over queen moves and arrow shots as separate levels
+    boolean arrowPending;     // split-ply only: the queen has moved and this node branches over arrow shots
     
-    //	Child Node: Create a new node by applying an action to a parent's state
-    public TreeNode(int[][][] boardState, TreeNode parent, AmazonsAction action) {
+    //	Child Node: Create a new node by applying an action to a parent's state. No pointer back to the
+    //  parent is kept, with a transposition table a node can have several; the search records its path
+    public TreeNode(BitBoard boardState, TreeNode parent, int move) {
         this.boardState = boardState;
-        this.parent = parent;
-        this.action = action;
+        this.move = move;
+        // in a split-ply tree a queen move leaves the same player to shoot the arrow
+        this.splitPly = parent.splitPly;
+        this.arrowPending = parent.splitPly && !parent.arrowPending;
         // Flip the color: if parent's color is 2, child becomes 1; otherwise 2.
-        this.color = (parent.color == 2) ? 1 : 2;
-        this.children = new ArrayList<>();
+        this.color = this.arrowPending ? parent.color : (parent.color == 2) ? 1 : 2;
+        this.children = NO_CHILDREN;
+        this.childMoves = new int[0];
         this.expanded = false;
         this.actionsGenerated = false;
-        this.depth = parent.depth + 1;
         this.N = 0;
-        this.Q = 0;
-        if (this.depth > maxDepth) {
-            maxDepth = this.depth;
-            System.out.println("Depth: " + maxDepth);
-        }
     }
     
     //	Root Node: Initialize the tree with an initial board state and starting color
-    public TreeNode(int[][][] boardState, int color){
+    public TreeNode(BitBoard boardState, int color){
+        this(boardState, color, false);
+    }
+
+    //	Root Node of a tree that is either split-ply (queen move and arrow shot as two levels) or not
+    public TreeNode(BitBoard boardState, int color, boolean splitPly){
         this.boardState = boardState;
         this.color = color;
-        this.parent = null;
-        this.action = null;
-        this.children = new ArrayList<>();
+        this.splitPly = splitPly;
+        this.move = -1;
+        this.children = NO_CHILDREN;
+        this.childMoves = new int[0];
         this.expanded = false;
         this.actionsGenerated = false;
-        this.depth = 0;
         this.N = 0;
-        this.Q = 0;
     }
     
-    // 	Copy Constructor: For rollouts, create a a shallow copy of actions and state
+    // 	Copy Constructor: For rollouts, share the state and copy the moves not yet expanded
     public TreeNode(TreeNode copyNode) {
         this.boardState = copyNode.boardState;
-        this.possibleActions = copyNode.possibleActions;
+        this.possibleMoves = (copyNode.possibleMoves != null) ? copyNode.possibleMoves.clone() : null;
+        this.numPossibleMoves = copyNode.numPossibleMoves;
+        this.move = copyNode.move;
         this.color = copyNode.color;
+        this.splitPly = copyNode.splitPly;
+        this.arrowPending = copyNode.arrowPending;
         this.expanded = false;
         this.actionsGenerated = copyNode.actionsGenerated;
-        this.children = new ArrayList<>();
+        this.children = NO_CHILDREN;
+        this.childMoves = new int[0];
     }
     
     // check if this node has no further moves
@@ -64,7 +94,7 @@ public class TreeNode {
         if (!this.actionsGenerated) {
             generateActions();
         }
-        return this.possibleActions.isEmpty() && this.children.isEmpty();
+        return this.numPossibleMoves == 0 && this.numChildren == 0;
     }
     
     // true if still moves to expand.
@@ -72,73 +102,282 @@ public class TreeNode {
         if (!this.actionsGenerated) {
             generateActions();
         }
-        return !this.possibleActions.isEmpty();
+        return this.numPossibleMoves > 0;
     }
     
     // true if this node already has at least one child
     public boolean hasExpandedChildren() {
-        return !this.children.isEmpty();
+        return this.numChildren > 0;
+    }
+
+    public int getNumChildren() {
+        return this.numChildren;
+    }
+
+    // the i-th expanded child, for i < getNumChildren(); safe to call while another thread expands the node
+    public TreeNode getChild(int i) {
+        return this.children[i];
+    }
+
+    // the packed move from this node to its i-th child
+    public int getChildMove(int i) {
+        return this.childMoves[i];
+    }
+
+    // the prior of the move to the i-th child, 0 for children expanded at random
+    public float getChildPrior(int i) {
+        float[] priors = this.childPriors;
+        return (priors != null && i < priors.length) ? priors[i] : 0f;
+    }
+
+    public double getQ() {
+        return Double.longBitsToDouble(this.qBits);
+    }
+
+    // count one more visit; the search threads also use this for virtual loss during selection
+    public void addVisit() {
+        VISITS.incrementAndGet(this);
+    }
+
+    // add a simulation result to the cumulative reward
+    public void addReward(double result) {
+        long bits;
+        do {
+            bits = this.qBits;
+        } while (!REWARD.compareAndSet(this, bits, Double.doubleToRawLongBits(Double.longBitsToDouble(bits) + result)));
     }
     
+    public boolean isProven() {
+        return this.proof != UNPROVEN;
+    }
+
+    // Settle this node from its children if they decide it and return whether it is proven. The children's
+    // proofs count for the player to move here: one won child wins the node for them, and once every move
+    // is expanded, all children lost loses it. A node without moves has lost, so terminal positions are
+    // proven the same way. Proofs only ever go from unproven to proven, so racing threads agree.
+    public boolean updateProof() {
+        if (this.proof != UNPROVEN) {
+            return true;
+        }
+        boolean allLost = !hasUnexpandedChildren();
+        // the count is published after the array, so this reads a complete prefix
+        int count = this.numChildren;
+        TreeNode[] expandedChildren = this.children;
+        for (int i = 0; i < count; i++) {
+            byte childProof = expandedChildren[i].proof;
+            if (childProof == PROVEN_WIN) {
+                // after a queen move the same player moves again, otherwise the mover here is the opponent
+                this.proof = this.arrowPending ? PROVEN_WIN : PROVEN_LOSS;
+                return true;
+            }
+            if (childProof != PROVEN_LOSS) {
+                allLost = false;
+            }
+        }
+        if (allLost) {
+            this.proof = this.arrowPending ? PROVEN_LOSS : PROVEN_WIN;
+            return true;
+        }
+        return false;
+    }
+
     //return the current player's color at this node
     public int getColor() {
         return this.color;
     }
-    
+
+    // the color of the player who made the move into this node, Q is counted from their point of view;
+    // after only a queen move that is still the player to move
+    public int getMover() {
+        return this.arrowPending ? this.color : (this.color == 2) ? 1 : 2;
+    }
+
     // Get the of count the moves not yet expanded
     public int getNumPossibleActions(){
         if (!this.actionsGenerated) {
             generateActions();
         }
-        return this.possibleActions.size();
+        return this.numPossibleMoves;
     }
     
-    //  generate the list of all possible moves from this board state
-    private void generateActions(){
-        this.possibleActions = AmazonsActionFactory.getActions(this.boardState, this.color);
+    //  generate the list of all possible moves from this board state, as packed ints;
+    //  in a split-ply tree that is either the queen moves or the arrow shots of the queen move made
+    private synchronized void generateActions(){
+        if (this.actionsGenerated) {
+            return; // another search thread got here first
+        }
+        int[] buffer = MOVE_BUFFER.get();
+        if (this.arrowPending) {
+            this.numPossibleMoves = AmazonsActionFactory.generateArrowShots(this.boardState, this.move, buffer);
+        } else if (this.splitPly) {
+            this.numPossibleMoves = AmazonsActionFactory.generateQueenMoves(this.boardState, this.color, buffer);
+        } else {
+            this.numPossibleMoves = AmazonsActionFactory.generateMoves(this.boardState, this.color, buffer);
+        }
+        this.possibleMoves = Arrays.copyOf(buffer, this.numPossibleMoves);
         this.actionsGenerated = true;
     }
     
-    // Create a new child node using the provided action
-    public TreeNode generateChild(AmazonsAction action) {
-        TreeNode child = new TreeNode(AmazonsAction.applyAction(action, this.boardState), this, action);
-        this.children.add(child);
+    // Create a new child node using the provided packed move. The array is grown by copying and the
+    // count is published after it, so threads reading the first numChildren entries never need the lock.
+    public synchronized TreeNode generateChild(int move) {
+        return generateChild(move, null);
+    }
+
+    // same, but a position already in the table is linked in as the child instead of being created
+    // again, which turns the tree into a DAG. Only complete-move positions are shared: a split-ply
+    // queen-move node also depends on which queen moved.
+    public synchronized TreeNode generateChild(int move, TranspositionTable table) {
+        BitBoard childState = new BitBoard(this.boardState);
+        if (this.arrowPending) {
+            // the queen already stands on its destination
+            childState.placeArrow(AmazonsAction.getArrowDest(move));
+        } else if (this.splitPly) {
+            childState.moveQueen(AmazonsAction.getQueenSrc(move), AmazonsAction.getQueenDest(move));
+        } else {
+            AmazonsAction.applyMove(move, childState);
+        }
+        TreeNode child = null;
+        boolean shared = table != null && (!this.splitPly || this.arrowPending);
+        int childColor = (this.color == 2) ? 1 : 2;
+        if (shared) {
+            child = table.get(childState, childColor);
+        }
+        if (child == null) {
+            child = new TreeNode(childState, this, move);
+            if (shared) {
+                // another parent may have reached the position since the lookup; then its node is used
+                child = table.putIfAbsent(child);
+            }
+        }
+        TreeNode[] grown = this.children;
+        int[] grownMoves = this.childMoves;
+        if (this.numChildren == grown.length) {
+            grown = Arrays.copyOf(grown, Math.max(4, grown.length * 2));
+        }
+        if (this.numChildren == grownMoves.length) {
+            grownMoves = Arrays.copyOf(grownMoves, grown.length);
+        }
+        grown[this.numChildren] = child;
+        grownMoves[this.numChildren] = move;
+        this.childMoves = grownMoves;
+        this.children = grown;
+        this.numChildren++;
         return child;
     }
     
     // expand this node by generating children for every possible move
-    public void expand() {
+    public synchronized void expand() {
         if (!this.actionsGenerated){
             generateActions();
         }
-        for (AmazonsAction a : this.possibleActions) {
-            this.children.add(new TreeNode(AmazonsAction.applyAction(a, this.boardState), this, a));
+        this.children = Arrays.copyOf(this.children, this.numChildren + this.numPossibleMoves);
+        this.childMoves = Arrays.copyOf(this.childMoves, this.children.length);
+        for (int i = 0; i < this.numPossibleMoves; i++) {
+            generateChild(this.possibleMoves[i]);
         }
-        this.possibleActions.clear();
+        this.numPossibleMoves = 0;
+        this.possibleMoves = null;
+        this.possiblePriors = null;
         this.expanded = true;
     }
     
     // randomly pick an action to expand, useful for rollout paths
     public TreeNode expandAtRandom(){
+        return expandAtRandom(ThreadLocalRandom.current());
+    }
+
+    // same, drawing from the given generator so a search worker's choices can be reproduced from its seed;
+    // returns null if another search thread expanded the last move first
+    public TreeNode expandAtRandom(Random random){
+        return expandAtRandom(random, null);
+    }
+
+    // same, looking the new position up in the transposition table first (null for a plain tree)
+    public synchronized TreeNode expandAtRandom(Random random, TranspositionTable table){
         if (!this.actionsGenerated) {
             generateActions();
         }
-        int index = (int) (Math.random() * getNumPossibleActions());
-        AmazonsAction action = this.possibleActions.get(index);
-        this.possibleActions.remove(index);
-        if (this.possibleActions.isEmpty()) {
+        if (this.numPossibleMoves == 0) {
+            return null;
+        }
+        int index = random.nextInt(this.numPossibleMoves);
+        int move = this.possibleMoves[index];
+        // the child goes in before the move count drops, so a node never looks terminal to other threads
+        TreeNode child = generateChild(move, table);
+        // the last unexpanded move fills the gap, so removal is O(1)
+        this.possibleMoves[index] = this.possibleMoves[this.numPossibleMoves - 1];
+        if (this.possiblePriors != null) {
+            this.possiblePriors[index] = this.possiblePriors[this.numPossibleMoves - 1];
+        }
+        this.numPossibleMoves--;
+        if (this.numPossibleMoves == 0) {
+            this.possibleMoves = null;
+            this.possiblePriors = null;
             this.expanded = true;}
-        return generateChild(action);
+        return child;
     }
-    
-    // compute the UCB value to balance exploration and exploitation,
-    // unvisited nodes return a high constant to force exploration.
-    public double getUCB(double explorationParam) {
-        if (N == 0) return 10000.0;
-        return (Q / N) + explorationParam * Math.sqrt(Math.log(parent.N) / N);
+
+    // Expand the move with the best MoveOrdering score instead of a random one, recording its prior for
+    // PUCT. The moves are scored and sorted the first time; returns null if no moves are left to expand.
+    public synchronized TreeNode expandBest(TranspositionTable table) {
+        if (!this.actionsGenerated) {
+            generateActions();
+        }
+        if (this.numPossibleMoves == 0) {
+            return null;
+        }
+        if (this.possiblePriors == null) {
+            this.possiblePriors = new float[this.numPossibleMoves];
+            MoveOrdering.order(this.boardState, this.color, this.possibleMoves, this.numPossibleMoves, this.arrowPending, this.possiblePriors);
+        }
+        int index = this.numPossibleMoves - 1;
+        // the prior is in place before generateChild publishes the child
+        float[] priors = (this.childPriors != null) ? this.childPriors : new float[0];
+        if (priors.length <= this.numChildren) {
+            priors = Arrays.copyOf(priors, Math.max(4, Math.max(this.children.length, priors.length * 2)));
+        }
+        priors[this.numChildren] = this.possiblePriors[index];
+        this.childPriors = priors;
+        TreeNode child = generateChild(this.possibleMoves[index], table);
+        this.numPossibleMoves--;
+        if (this.numPossibleMoves == 0) {
+            this.possibleMoves = null;
+            this.possiblePriors = null;
+            this.expanded = true;
+        }
+        return child;
+    }
+
+    // compute the UCB value to balance exploration and exploitation, given the visit count of the parent
+    // being selected from; unvisited nodes return a high constant to force exploration.
+    public double getUCB(double explorationParam, int parentVisits) {
+        return getUCBFromTerm(explorationParam * Math.sqrt(AmazonsUtility.log(parentVisits)));
+    }
+
+    // same, with the parent's part of the exploration term worked out once for all its children:
+    // explorationTerm = explorationParam * sqrt(ln(parentVisits)). The looked-up square roots can be a few
+    // ulps off sqrt(ln(parentVisits) / N), so children that (nearly) tie may be ordered differently.
+    public double getUCBFromTerm(double explorationTerm) {
+        int visits = N;
+        if (visits == 0) return 10000.0;
+        return (getQ() / visits) + explorationTerm * AmazonsUtility.inverseSqrt(visits);
+    }
+
+    // PUCT score: the win rate plus an exploration term weighted by the move's prior, which shrinks with
+    // the node's own visits; a node not visited yet has only the exploration term
+    public double getPUCT(double explorationParam, float prior, int parentVisits) {
+        return getPUCTFromTerm(explorationParam * AmazonsUtility.sqrt(parentVisits), prior);
+    }
+
+    // same, with explorationTerm = explorationParam * sqrt(parentVisits) worked out once per parent
+    public double getPUCTFromTerm(double explorationTerm, float prior) {
+        int visits = N;
+        double winrate = (visits == 0) ? 0.0 : getQ() / visits;
+        return winrate + explorationTerm * prior / (1 + visits);
     }
 
     public void printBoard() {
-        AmazonsUtility.printBoard(this.boardState[0]);
+        AmazonsUtility.printBoard(this.boardState);
     }
 }
\ No newline at end of file
@@ -0,0 +1,93 @@
+package ubc.cosc322;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+// SIMD version of HeuristicEvaluator's metric loops for BatchEvaluator, a whole vector of cells at a time
+// (144 cells per board, a multiple of every vector length).
+// The distance comparisons are int lanes counted with trueCount; 2^-distance is gathered from a table.
+// UNREACHED (Integer.MAX_VALUE) is clamped to FAR as the lanes are loaded: no real distance gets near it, so
+// every comparison and the clamped king control come out the same, and POW2[FAR] = 0 stands for pow2's 0.
+// Loaded by reflection, so the class is only needed (and only compiled, by the "vector" profile) when the
+// incubator module is available.
+final class VectorKernel implements BatchEvaluator.Kernel {
+    private static final int WHITE_QUEEN = 1;
+    private static final double TURN_ADVANTAGE = 0.15;
+    private static final int FAR = 127;
+    private static final int CELLS = HeuristicEvaluator.CELLS;
+
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS = VectorShape.forBitSize(DOUBLES.vectorBitSize() / 2).withLanes(int.class);
+
+    // POW2[d] = 2^-d, 0 for FAR
+    private static final double[] POW2 = new double[FAR + 1];
+
+    static {
+        for (int d = 0; d < FAR; d++) {
+            POW2[d] = Math.pow(2, -d);
+        }
+    }
+
+    // per-thread index buffers for the gathers: clamped white and black distances, their difference
+    private final ThreadLocal<int[][]> indexes = ThreadLocal.withInitial(() -> new int[3][INTS.length()]);
+
+    @Override
+    public void queenMetrics(int[] white, int[] black, int count, int[] playerTurns,
+                             double[] territory, double[] control, double[] diffWeight) {
+        int[][] index = indexes.get();
+        for (int p = 0; p < count; p++) {
+            int closer = 0, farther = 0, ties = 0;
+            DoubleVector controlSum = DoubleVector.zero(DOUBLES);
+            DoubleVector weightSum = DoubleVector.zero(DOUBLES);
+            for (int cell = p * CELLS; cell < (p + 1) * CELLS; cell += INTS.length()) {
+                IntVector w = IntVector.fromArray(INTS, white, cell).min(FAR);
+                IntVector b = IntVector.fromArray(INTS, black, cell).min(FAR);
+                VectorMask<Integer> whiteReached = w.compare(VectorOperators.LT, FAR);
+                VectorMask<Integer> bothReached = whiteReached.and(b.compare(VectorOperators.LT, FAR));
+                closer += w.lt(b).trueCount();
+                farther += b.lt(w).trueCount();
+                ties += w.eq(b).and(whiteReached).trueCount();
+
+                w.intoArray(index[0], 0);
+                b.intoArray(index[1], 0);
+                w.sub(b).abs().intoArray(index[2], 0);
+                controlSum = controlSum.add(DoubleVector.fromArray(DOUBLES, POW2, 0, index[0], 0))
+                                       .sub(DoubleVector.fromArray(DOUBLES, POW2, 0, index[1], 0));
+                weightSum = weightSum.add(DoubleVector.fromArray(DOUBLES, POW2, 0, index[2], 0, bothReached.cast(DOUBLES)));
+            }
+            territory[p] = territory(closer, farther, ties, playerTurns[p]);
+            control[p] = 2.0 * controlSum.reduceLanes(VectorOperators.ADD);
+            diffWeight[p] = weightSum.reduceLanes(VectorOperators.ADD);
+        }
+    }
+
+    @Override
+    public void kingMetrics(int[] white, int[] black, int count, int[] playerTurns,
+                            double[] territory, double[] control) {
+        for (int p = 0; p < count; p++) {
+            int closer = 0, farther = 0, ties = 0;
+            DoubleVector controlSum = DoubleVector.zero(DOUBLES);
+            for (int cell = p * CELLS; cell < (p + 1) * CELLS; cell += INTS.length()) {
+                IntVector w = IntVector.fromArray(INTS, white, cell).min(FAR);
+                IntVector b = IntVector.fromArray(INTS, black, cell).min(FAR);
+                closer += w.lt(b).trueCount();
+                farther += b.lt(w).trueCount();
+                ties += w.eq(b).and(w.compare(VectorOperators.LT, FAR)).trueCount();
+                // (black - white) / 6 clamped to [-1, 1]
+                DoubleVector lead = (DoubleVector) b.sub(w).convertShape(VectorOperators.I2D, DOUBLES, 0);
+                controlSum = controlSum.add(lead.div(6.0).max(-1.0).min(1.0));
+            }
+            territory[p] = territory(closer, farther, ties, playerTurns[p]);
+            control[p] = controlSum.reduceLanes(VectorOperators.ADD);
+        }
+    }
+
+    // +1 per square white is closer to, -1 per square black is, the turn advantage for ties
+    private static double territory(int closer, int farther, int ties, int playerTurn) {
+        return (closer - farther) + ties * (playerTurn == WHITE_QUEEN ? TURN_ADVANTAGE : -TURN_ADVANTAGE);
+    }
+}
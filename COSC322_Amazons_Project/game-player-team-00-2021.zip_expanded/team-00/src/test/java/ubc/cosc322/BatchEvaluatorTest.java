@@ -0,0 +1,58 @@
+package ubc.cosc322;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+// BatchEvaluator against HeuristicEvaluator.getHeuristicEval over positions from seeded random games, with
+// whichever kernel is loaded: the scalar one gives the same scores, the vector one up to rounding.
+public class BatchEvaluatorTest {
+    private static final int WHITE_QUEEN = 1;
+    private static final int BLACK_QUEEN = 2;
+    private static final double TOLERANCE = 1e-9;  // the vector kernel adds up in a different order
+
+    private final List<BitBoard> boards = new ArrayList<>();
+    private final List<Integer> colors = new ArrayList<>();
+
+    public BatchEvaluatorTest() {
+        Random random = new Random(322);
+        int[] moves = new int[AmazonsActionFactory.MAX_MOVES];
+        for (int game = 0; game < 300; game++) {
+            BitBoard board = BitBoard.startPosition();
+            int color = BLACK_QUEEN;
+            int plies = random.nextInt(80);
+            for (int ply = 0; ply < plies; ply++) {
+                int count = AmazonsActionFactory.generateMoves(board, color, moves);
+                if (count == 0) {
+                    break;
+                }
+                AmazonsAction.applyMove(moves[random.nextInt(count)], board);
+                color = (color == WHITE_QUEEN) ? BLACK_QUEEN : WHITE_QUEEN;
+            }
+            boards.add(board);
+            colors.add(color);
+        }
+    }
+
+    @Test
+    public void batchScoresMatchTheScalarEvaluation() {
+        // 300 positions in batches of 16, so the last batch is only partly filled
+        BatchEvaluator evaluator = new BatchEvaluator(16);
+        for (int start = 0; start < boards.size(); start += evaluator.capacity()) {
+            evaluator.clear();
+            int end = Math.min(boards.size(), start + evaluator.capacity());
+            for (int i = start; i < end; i++) {
+                evaluator.add(boards.get(i), colors.get(i));
+            }
+            evaluator.evaluate();
+            for (int i = start; i < end; i++) {
+                double expected = HeuristicEvaluator.getHeuristicEval(boards.get(i), colors.get(i));
+                assertEquals("position " + i, expected, evaluator.getScore(i - start), TOLERANCE);
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package ubc.cosc322;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+// BitboardEvaluator against HeuristicEvaluator over positions from seeded random games. The king metrics
+// have to match everywhere. The queen metrics only match where the scalar line walk finds the true queen
+// distances, which it can overestimate but never underestimate; there the scores have to match as well.
+public class BitboardEvaluatorTest {
+    private static final int WHITE_QUEEN = 1;
+    private static final int BLACK_QUEEN = 2;
+    private static final double TOLERANCE = 1e-9;  // the sums are added up in a different order
+
+    private final List<BitBoard> boards = new ArrayList<>();
+    private final List<Integer> colors = new ArrayList<>();
+
+    public BitboardEvaluatorTest() {
+        Random random = new Random(322);
+        int[] moves = new int[AmazonsActionFactory.MAX_MOVES];
+        for (int game = 0; game < 300; game++) {
+            BitBoard board = BitBoard.startPosition();
+            int color = BLACK_QUEEN;
+            int plies = random.nextInt(80);
+            for (int ply = 0; ply < plies; ply++) {
+                int count = AmazonsActionFactory.generateMoves(board, color, moves);
+                if (count == 0) {
+                    break;
+                }
+                AmazonsAction.applyMove(moves[random.nextInt(count)], board);
+                color = (color == WHITE_QUEEN) ? BLACK_QUEEN : WHITE_QUEEN;
+            }
+            boards.add(board);
+            colors.add(color);
+        }
+    }
+
+    @Test
+    public void kingMetricsMatch() {
+        for (int i = 0; i < boards.size(); i++) {
+            double[] scalar = HeuristicEvaluator.kingMetrics(boards.get(i), colors.get(i));
+            double[] bitboard = BitboardEvaluator.kingMetrics(boards.get(i), colors.get(i));
+            assertEquals("territory of position " + i, scalar[0], bitboard[0], TOLERANCE);
+            assertEquals("control of position " + i, scalar[1], bitboard[1], TOLERANCE);
+        }
+    }
+
+    @Test
+    public void queenDistancesAreNeverOverestimated() {
+        for (BitBoard board : boards) {
+            for (int queenType = WHITE_QUEEN; queenType <= BLACK_QUEEN; queenType++) {
+                int[] scalar = HeuristicEvaluator.queenDistances(board, queenType);
+                int[] exact = BitboardEvaluator.queenDistances(board, queenType);
+                for (int sq = 0; sq < BitBoard.SQUARES; sq++) {
+                    assertTrue("square " + sq, exact[sq] <= scalar[sq]);
+                    // both searches reach the same squares
+                    assertEquals("square " + sq, exact[sq] == Integer.MAX_VALUE, scalar[sq] == Integer.MAX_VALUE);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void scoresMatchWhereQueenDistancesAgree() {
+        int agreeing = 0;
+        for (int i = 0; i < boards.size(); i++) {
+            BitBoard board = boards.get(i);
+            if (!queenDistancesAgree(board)) {
+                continue;
+            }
+            agreeing++;
+            assertEquals("position " + i, HeuristicEvaluator.getHeuristicEval(board, colors.get(i)),
+                         BitboardEvaluator.getHeuristicEval(board, colors.get(i)), TOLERANCE);
+        }
+        // the opening and many enclosed endgames agree, so a handful of positions is too few to mean anything
+        assertTrue("only " + agreeing + " positions to compare", agreeing >= 30);
+    }
+
+    private static boolean queenDistancesAgree(BitBoard board) {
+        for (int queenType = WHITE_QUEEN; queenType <= BLACK_QUEEN; queenType++) {
+            if (!Arrays.equals(HeuristicEvaluator.queenDistances(board, queenType),
+                               BitboardEvaluator.queenDistances(board, queenType))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
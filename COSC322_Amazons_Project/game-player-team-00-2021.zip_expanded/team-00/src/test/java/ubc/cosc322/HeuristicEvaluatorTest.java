@@ -0,0 +1,39 @@
+package ubc.cosc322;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+// HeuristicEvaluator against the scores of the original int[][][] evaluator, recorded for a fixed set of
+// positions from random games: the opening, the middlegame, and enclosed endgames with squares neither
+// side can reach. The allocation-free rewrite has to give the same scores bit for bit.
+public class HeuristicEvaluatorTest {
+    private static final Object[][] POSITIONS = {
+        {"...W..W.../........../........../W........W/........../........../B........B/........../........../...B..B... b", -0.16574999999998244},
+        {"...W..W.../........../........../W........W/........../........../B........B/...B.....X/........../......B... w", 4.351286914076124},
+        {"...W....../........../....B.WX../W........X/.........W/......X.../....X.B..B/........../........../...B...... b", -9.13767572014672},
+        {"...WX.W.../X........./..X......./........W./...X.B.X../W..B....../.........B/.....X.XX./.....X..../...B...... w", -6.783669428148354},
+        {".....X..../XX....W.X./........../...WB...../.....XXB.W/..X.X.X.../.....B.X../.X.BX...../........../...X...W.X b", 2.078366670595402},
+        {".X.....B../..X..WX.../..X...X.../.......X.X/WW...B.X../X.X....X../X.XX.XB.X./.XW....X../XB.X....../.......... b", -16.35513748394646},
+        {"XX.WXX.WX./..X......B/...X.X...X/..XXX...../..X..XXX.X/.X......../..W..B..../.XX..X.XX./WX..XB..../X..B...... b", -9.913479657931886},
+        {"...X....../...BX.X.WX/.....XXXX./XXXX...XWX/X.....XX../.X..XX.BXB/......XX../.XW....X../.....XXX.X/...X.WB..X w", 4.926061268228746},
+        {".WB.X..XX./..X.XX.B.X/XWXX.XX.../.XBX.WX.../X.X.X..XX./.XX..XX.../.XWX....../..X.X.X..X/XXB...X.../...XXX.... b", -8.89357860550113},
+        {"X.X..W..../..XX.XXX.W/XX.X..X.X./X.W.XB..XX/.XXX.XX.../.X..XX..../.XX.X...XX/XWX..X..X./XX..XX.X../B.B.XB..X. b", -9.50564969711604},
+        {"W.X..X..../XX..X...X./.XX.X..XB./XXX.X.XXX./XXWXXX...X/.X.X.X.XWX/X.....XXX./..XXXB..X./.B.X.XXX.X/WX...XB..X b", -16.363789342051486},
+        {".XWXXXXX.X/..X..X..../.XXXXXX.../XX..WXXWX./X..X.XXX.W/XXXBX.XXXX/..XX.BXX.X/....XX.BBX/.....XXXX./....X..X.X b", -4.936682548460743},
+        {"XX.X.X..X./..XXXXWXXX/XXWBXXX.../XXX.XW.XX./XX.XXWXX../...BXX.X../.XXXXXXXX./XX.X.....X/....XXX..X/B.XXBX..X. b", -5.501207994427244},
+        {".XBXX.XX../XX.XX.BXX./..XWXWXX.X/X.XXXXXX.X/XXX..X..../.X.XW.X.X./.X.X.XBXXX/XX.X.X.X../XXXXX.WX.X/...XXXXXXB b", -6.8408799721742115},
+        {"X.X..XX.X./..XBX..XX./X..X.XWXXX/.XXX.XXXXX/.X.XXBXX.W/XWXX.XXX.X/X....XXBXX/..XXXXXXWX/X.XXXXXXXX/X.B.XX...X b", -2.718961446801492},
+        {"..XXXX.XXW/..XX.XBXX./XXXWXXXXXX/XXXXWXXXB./.XX.XXXXXX/..XXXX.X../..XXXXXXXX/.XXX..XX.B/.XXXBXXX.X/X.XX.X.XWX b", -2.3}
+    };
+
+    @Test
+    public void matchesOriginalEvaluator() {
+        for (Object[] position : POSITIONS) {
+            String text = (String) position[0];
+            BitBoard board = Perft.parsePosition(text);
+            double score = HeuristicEvaluator.getHeuristicEval(board, Perft.parseColor(text));
+            assertEquals(text, (Double) position[1], score, 0.0);
+        }
+    }
+}
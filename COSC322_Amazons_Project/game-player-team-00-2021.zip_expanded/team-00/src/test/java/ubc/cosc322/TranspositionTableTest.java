@@ -0,0 +1,54 @@
+package ubc.cosc322;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+// Threads that reach the same new positions at once have to end up sharing one node per position.
+public class TranspositionTableTest {
+    private static final int THREADS = 8;
+
+    @Test
+    public void concurrentInsertsShareOneNode() throws InterruptedException {
+        TreeNode root = new TreeNode(BitBoard.startPosition(), 2);
+        int[] moves = new int[AmazonsActionFactory.MAX_MOVES];
+        int count = Math.min(500, AmazonsActionFactory.generateMoves(root.boardState, root.color, moves));
+        TranspositionTable table = new TranspositionTable(1 << 12);
+        TreeNode[][] found = new TreeNode[THREADS][count];
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < count; i++) {
+                    BitBoard board = new BitBoard(root.boardState);
+                    AmazonsAction.applyMove(moves[i], board);
+                    found[thread][i] = table.putIfAbsent(new TreeNode(board, root, moves[i]));
+                }
+            });
+            worker.start();
+            threads.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : threads) {
+            worker.join();
+        }
+        for (int i = 0; i < count; i++) {
+            assertNotNull(found[0][i]);
+            for (int t = 1; t < THREADS; t++) {
+                assertSame("move " + i, found[0][i], found[t][i]);
+            }
+            assertSame("move " + i, found[0][i], table.get(found[0][i].boardState, found[0][i].color));
+        }
+    }
+}
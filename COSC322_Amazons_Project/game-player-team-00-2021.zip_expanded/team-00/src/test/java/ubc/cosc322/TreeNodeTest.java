@@ -0,0 +1,39 @@
+package ubc.cosc322;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+// The UCB score from the looked-up logs and square roots against the original formula,
+// Q / N + c * sqrt(ln(parentVisits) / N). The two aren't bit-identical, so selection between children
+// that are within a few ulps of each other can differ, but never by more than that.
+public class TreeNodeTest {
+    private static final double EXPLORATION = 1.4;
+    private static final int ULPS = 8;
+
+    @Test
+    public void ucbMatchesTheOriginalFormulaWithinAFewUlps() {
+        Random random = new Random(24);
+        TreeNode node = new TreeNode(BitBoard.startPosition(), 2);
+        for (int i = 0; i < 100000; i++) {
+            int parentVisits = 2 + random.nextInt(200000);
+            int visits = 1 + random.nextInt(parentVisits);
+            node.N = visits;
+            node.qBits = Double.doubleToRawLongBits(visits * random.nextDouble());
+            double exact = node.getQ() / visits + EXPLORATION * Math.sqrt(Math.log(parentVisits) / visits);
+            double term = EXPLORATION * Math.sqrt(AmazonsUtility.log(parentVisits));
+            String position = parentVisits + "/" + visits;
+            assertEquals(position, exact, node.getUCB(EXPLORATION, parentVisits), ULPS * Math.ulp(exact));
+            assertEquals(position, exact, node.getUCBFromTerm(term), ULPS * Math.ulp(exact));
+        }
+    }
+
+    @Test
+    public void unvisitedNodesAreTriedFirst() {
+        TreeNode node = new TreeNode(BitBoard.startPosition(), 2);
+        assertEquals(10000.0, node.getUCB(EXPLORATION, 100), 0.0);
+        assertEquals(10000.0, node.getUCBFromTerm(EXPLORATION), 0.0);
+    }
+}